@@ -1,9 +1,39 @@
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -15,32 +45,74 @@ import java.util.stream.Stream;
 public class DmitriiAlekhin {
     public static void main(String[] args) {
         try {
-            if (args.length == 0) {
+            if (args.length == 0 || args[0].equals("-s") || args[0].equals("--size")) {
+                if (args.length > 0)
+                    InputHelper.parseSize(args.length > 1 ? args[1] : "");
+
                 InputHelper.tryInitAndParse();
 
                 var points = InputHelper.getPoints();
-                var scenario = InputHelper.getScenario();
-                var game = new GameData(points);
-                var backtracking = new Backtracking(game, scenario);
-
-                var startMillis = System.currentTimeMillis();
-                OutputHelper.printResult(
-                        OutputHelper.BACKTRACKING_OUT,
-                        backtracking.run(),
-                        System.currentTimeMillis() - startMillis
-                );
+                var width = InputHelper.getWidth();
+                var height = InputHelper.getHeight();
 
-                var aStar = new AStar(new GameData(points), scenario);
-
-                startMillis = System.currentTimeMillis();
-                OutputHelper.printResult(
-                        OutputHelper.A_STAR_OUT,
-                        aStar.run(),
-                        System.currentTimeMillis() - startMillis
+                solve(
+                        new GameData(points, width, height),
+                        new GameData(points, width, height),
+                        InputHelper.getScenario()
                 );
 
             } else if (args[0].equals("-t") || args[0].equals("--test"))
                 TestHelper.run(1000);
+            else if (args[0].equals("-b") || args[0].equals("--bench"))
+                TestHelper.benchmark(100_000);
+            else if (args[0].equals("-m") || args[0].equals("--map")) {
+                // Engines never mutate their initial game data, so both share one read-only mapping
+                var game = MapFile.map(Path.of(args[1]));
+                solve(game, game, args.length > 2 ? Integer.parseInt(args[2]) : 1);
+
+            } else if (args[0].equals("-l") || args[0].equals("--batch")) {
+                // The optional results file and map size may come in any order, the size is told by its shape
+                Path output = null;
+                for (int i = 2; i < args.length; i++)
+                    if (InputHelper.isSize(args[i])) InputHelper.parseSize(args[i]);
+                    else if (output == null) output = Path.of(args[i]);
+                    else throw new IOException("Unexpected argument " + args[i]);
+
+                batch(Path.of(args[1]), output);
+
+            } else if (args[0].equals("-r") || args[0].equals("--server")) {
+                if (args.length > 2)
+                    InputHelper.parseSize(args[2]);
+
+                var processors = Runtime.getRuntime().availableProcessors();
+                try (var server = new SolverServer(Integer.parseInt(args[1]), InputHelper.getWidth(),
+                        InputHelper.getHeight(), processors, 16 * processors)) {
+                    System.out.printf("Listening on port %d\n", server.getPort());
+                    server.serve();
+                }
+
+            } else if (args[0].equals("-a") || args[0].equals("--algorithm")) {
+                if (args.length > 2)
+                    InputHelper.parseSize(args[2]);
+
+                InputHelper.tryInitAndParse();
+
+                var game = new GameData(InputHelper.getPoints(), InputHelper.getWidth(), InputHelper.getHeight());
+                var engine = engine(args[1], game, InputHelper.getScenario());
+
+                var startMillis = System.currentTimeMillis();
+                var snapshot = engine.run();
+                System.out.print(OutputHelper.formatResult(snapshot, System.currentTimeMillis() - startMillis));
+
+            } else if (args[0].equals("-e") || args[0].equals("--export")) {
+                if (args.length > 2)
+                    InputHelper.parseSize(args[2]);
+
+                InputHelper.tryInitAndParse();
+
+                var game = new GameData(InputHelper.getPoints(), InputHelper.getWidth(), InputHelper.getHeight());
+                MapFile.write(game, Path.of(args[1]));
+            }
         } catch (Exception e) {
             System.out.println("Exception occurred!");
             System.out.println("Message: " + e.getMessage());
@@ -48,6 +120,83 @@ public class DmitriiAlekhin {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Solves all the maps of the batch file on all the cores and writes the results in the input order.
+     *
+     * @param input  maps file.
+     * @param output results file (null for the standard output).
+     * @throws IOException if it can't read the maps or write the results.
+     */
+    private static void batch(Path input, Path output) throws IOException {
+        var solver = new BatchSolver(InputHelper.getWidth(), InputHelper.getHeight(),
+                64 * Runtime.getRuntime().availableProcessors());
+        var pool = new ForkJoinPool();
+
+        // The standard output is flushed, but not closed
+        try (var channel = FileChannel.open(input)) {
+            var parser = new InputParser(channel, InputHelper.getWidth(), InputHelper.getHeight());
+
+            if (output == null) solver.solve(parser, new BufferedWriter(new OutputStreamWriter(System.out)), pool);
+            else try (var writer = Files.newBufferedWriter(output)) {
+                solver.solve(parser, writer, pool);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Creates the engine of the given name.
+     *
+     * @param name     engine name: backtracking, astar, dial, jps, bidirectional, ida, landmark, state or lpa.
+     * @param data     game data.
+     * @param scenario game scenario.
+     * @return engine.
+     * @throws IllegalArgumentException if there is no engine of the given name.
+     */
+    private static SearchingAlgorithm engine(String name, GameData data, int scenario) {
+        return switch (name) {
+            case "backtracking" -> new Backtracking(data, scenario);
+            case "astar" -> new AStar(data, scenario);
+            case "dial" -> new Dial(data, scenario);
+            case "jps" -> new JumpPointSearch(data, scenario);
+            case "bidirectional" -> new BidirectionalAStar(data, scenario);
+            case "ida" -> new IterativeDeepeningAStar(data, scenario);
+            case "landmark" -> new LandmarkSearch(data, scenario);
+            case "state" -> new StateSpaceSearch(data, scenario);
+            case "lpa" -> new LifelongPlanningAStar(data, scenario);
+            default -> throw new IllegalArgumentException("Unknown algorithm " + name);
+        };
+    }
+
+    /**
+     * Runs Backtracking and A* algorithms and prints the results to the output files.
+     *
+     * @param backtrackingData game data for Backtracking.
+     * @param aStarData        game data for A*.
+     * @param scenario         game scenario.
+     * @throws IOException default cases of IOException.
+     */
+    private static void solve(GameData backtrackingData, GameData aStarData, int scenario) throws IOException {
+        var backtracking = new Backtracking(backtrackingData, scenario);
+
+        var startMillis = System.currentTimeMillis();
+        OutputHelper.printResult(
+                OutputHelper.BACKTRACKING_OUT,
+                backtracking.run(),
+                System.currentTimeMillis() - startMillis
+        );
+
+        var aStar = new AStar(aStarData, scenario);
+
+        startMillis = System.currentTimeMillis();
+        OutputHelper.printResult(
+                OutputHelper.A_STAR_OUT,
+                aStar.run(),
+                System.currentTimeMillis() - startMillis
+        );
+    }
 }
 
 /**
@@ -67,13 +216,21 @@ interface Cell {
         return this.getClass() == cls;
     }
 
+    /**
+     * Returns the code of the cell in the matrix storage.
+     *
+     * @return cell code.
+     * @see CellCodes
+     */
+    byte code();
+
     /**
      * Determines if the cell is safe to step on.
      *
      * @return true if the cell is safe to step on, false otherwise
      */
     default boolean isSafe() {
-        return this instanceof ObjectCell || this == AirCell.FREE;
+        return CellCodes.SAFE[code()];
     }
 
     /**
@@ -82,7 +239,7 @@ interface Cell {
      * @return true if the cell is free to step on / spawn, false otherwise
      */
     default boolean isFree() {
-        return this.isTypeOf(AirCell.class);
+        return CellCodes.AIR[code()];
     }
 }
 
@@ -93,8 +250,19 @@ interface Cell {
  * @see Cell
  */
 enum AirCell implements Cell {
-    PERCEPTION,
-    FREE
+    PERCEPTION(CellCodes.PERCEPTION),
+    FREE(CellCodes.FREE);
+
+    private final byte code;
+
+    AirCell(byte code) {
+        this.code = code;
+    }
+
+    @Override
+    public byte code() {
+        return code;
+    }
 }
 
 /**
@@ -104,7 +272,18 @@ enum AirCell implements Cell {
  * @see Cell
  */
 enum EnemyCell implements Cell {
-    DAVY_JONES
+    DAVY_JONES(CellCodes.DAVY_JONES);
+
+    private final byte code;
+
+    EnemyCell(byte code) {
+        this.code = code;
+    }
+
+    @Override
+    public byte code() {
+        return code;
+    }
 }
 
 /**
@@ -114,9 +293,20 @@ enum EnemyCell implements Cell {
  * @see Cell
  */
 enum KrakenEnemiesFamilyCell implements Cell {
-    KRAKEN,
-    ROCK,
-    KRAKEN_ROCK
+    KRAKEN(CellCodes.KRAKEN),
+    ROCK(CellCodes.ROCK),
+    KRAKEN_ROCK(CellCodes.KRAKEN_ROCK);
+
+    private final byte code;
+
+    KrakenEnemiesFamilyCell(byte code) {
+        this.code = code;
+    }
+
+    @Override
+    public byte code() {
+        return code;
+    }
 }
 
 /**
@@ -127,627 +317,824 @@ enum KrakenEnemiesFamilyCell implements Cell {
  * @see Cell
  */
 enum ObjectCell implements Cell {
-    TORTUGA,
-    CHEST
+    TORTUGA(CellCodes.TORTUGA),
+    CHEST(CellCodes.CHEST);
+
+    private final byte code;
+
+    ObjectCell(byte code) {
+        this.code = code;
+    }
+
+    @Override
+    public byte code() {
+        return code;
+    }
 }
 
 /**
- * 9x9 matrix representation.
+ * Byte codes of the cells and lookup tables over them. The matrix keeps one code per cell,
+ * so the cell properties and the spawn rules are single array loads instead of enum type checks.
  *
  * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see Cell
+ * @see Matrix
  * @see GameData
- * @see Point
- * @see Cloneable
  */
-class Matrix implements Cloneable {
+final class CellCodes {
+    public static final byte FREE = 0;
+    public static final byte PERCEPTION = 1;
+    public static final byte DAVY_JONES = 2;
+    public static final byte KRAKEN = 3;
+    public static final byte ROCK = 4;
+    public static final byte KRAKEN_ROCK = 5;
+    public static final byte TORTUGA = 6;
+    public static final byte CHEST = 7;
 
     /**
-     * 9x9 Point matrix
-     *
-     * @see Point
+     * Marks the code which cannot be spawned.
      */
-    private Point[][] matrix = new Point[9][9];
+    public static final byte NONE = -1;
 
     /**
-     * Initialization of an empty matrix.
+     * Cells by their codes.
      */
-    public Matrix() {
-        for (int y = 0; y < 9; y++)
-            matrix[y] = new Point[9];
+    public static final Cell[] CELLS = {
+            AirCell.FREE,
+            AirCell.PERCEPTION,
+            EnemyCell.DAVY_JONES,
+            KrakenEnemiesFamilyCell.KRAKEN,
+            KrakenEnemiesFamilyCell.ROCK,
+            KrakenEnemiesFamilyCell.KRAKEN_ROCK,
+            ObjectCell.TORTUGA,
+            ObjectCell.CHEST
+    };
 
-        for (int y = 0; y < 9; y++)
-            for (int x = 0; x < 9; x++)
-                matrix[x][y] = new Point(x, y);
-    }
+    /**
+     * Cells which are safe to step on (free air and objects).
+     */
+    public static final boolean[] SAFE = {true, false, false, false, false, false, true, true};
 
     /**
-     * Returns the point by the coordinates if it exists.
-     *
-     * @param x x-coordinate.
-     * @param y y-coordinate.
-     * @return point by the coordinates if it exists, <code>Optional.empty()</code> otherwise.
+     * Air cells (free to step on / spawn).
      */
-    public Optional<Point> getPoint(int x, int y) {
-        if (y < 0 || y >= 9 || x < 0 || x >= 9) return Optional.empty();
-        return Optional.of(matrix[x][y]);
-    }
+    public static final boolean[] AIR = {true, true, false, false, false, false, false, false};
 
     /**
-     * Returns available (size=[2, 4]) Von-Neumann neighbors of the point by its coordinates.
-     *
-     * @param x x-coordinate.
-     * @param y y-coordinate.
-     * @return opened stream of available Von-Neumann neighbors of the point.
+     * Kraken family cells.
      */
-    public Stream<Point> neighbors(int x, int y) {
-        return Stream.of(
-                        getPoint(x, y + 1), getPoint(x, y - 1),
-                        getPoint(x + 1, y), getPoint(x - 1, y)
-                )
-                .filter(Optional::isPresent)
-                .map(Optional::get);
-    }
+    public static final boolean[] KRAKEN_FAMILY = {false, false, false, true, true, true, false, false};
 
     /**
-     * Returns available (size=[1, 4]) diagonal neighbors of the point by its coordinates.
-     *
-     * @param x x-coordinate.
-     * @param y y-coordinate.
-     * @return opened stream of available diagonal neighbors of the point.
+     * Cells on which Jack Sparrow can be spawned.
      */
-    public Stream<Point> corners(int x, int y) {
-        return Stream.of(
-                        getPoint(x + 1, y + 1), getPoint(x + 1, y - 1),
-                        getPoint(x - 1, y + 1), getPoint(x - 1, y - 1)
-                )
-                .filter(Optional::isPresent)
-                .map(Optional::get);
-    }
+    public static final boolean[] JACK_SPAWNABLE = {true, true, false, false, false, false, true, false};
 
     /**
-     * Returns available (size=[2, 4]) 2nd-order Von-neumann neighbors of the point by its coordinates.
-     *
-     * @param x x-coordinate.
-     * @param y y-coordinate.
-     * @return opened stream of available 2nd-order Von-neumann neighbors of the point.
-     * @see AStar
+     * Spawn rules: <code>SPAWN[cell][code]</code> is the code of the cell after spawning
+     * <code>cell</code> over <code>code</code>, <code>NONE</code> if the spawn is not possible.
      */
-    public Stream<Point> secondNeighbors(int x, int y) {
-        return Stream.of(
-                        getPoint(x, y + 2), getPoint(x, y - 2),
-                        getPoint(x + 2, y), getPoint(x - 2, y)
-                )
-                .filter(Optional::isPresent)
-                .map(Optional::get);
+    public static final byte[][] SPAWN = new byte[CELLS.length][CELLS.length];
+
+    static {
+        for (byte cell = 0; cell < CELLS.length; cell++)
+            for (byte code = 0; code < CELLS.length; code++)
+                SPAWN[cell][code] = spawn(cell, code);
+    }
+
+    private CellCodes() {
     }
 
     /**
-     * First scenario moves.
+     * Applies the spawn rules to the pair of codes.
      *
-     * @param x x-coordinate.
-     * @param y y-coordinate.
-     * @return stream of neighbors + corners of the given point.
+     * @param cell spawned cell code.
+     * @param code current cell code.
+     * @return resulting cell code, <code>NONE</code> if the spawn is not possible.
      */
-    public Stream<Point> firstScenario(int x, int y) {
-        return Stream.concat(neighbors(x, y), corners(x, y));
+    private static byte spawn(byte cell, byte code) {
+        return switch (cell) {
+            case KRAKEN -> AIR[code] || KRAKEN_FAMILY[code] ? (code == ROCK ? KRAKEN_ROCK : KRAKEN) : NONE;
+            case ROCK -> AIR[code] || KRAKEN_FAMILY[code] ? (code == KRAKEN ? KRAKEN_ROCK : ROCK) : NONE;
+            case TORTUGA, CHEST -> code == FREE || code == cell ? cell : NONE;
+            case KRAKEN_ROCK -> NONE;
+            default -> AIR[code] || code == cell ? cell : NONE;
+        };
     }
+}
 
-    @Override
-    public String toString() {
-        var builder = new StringBuilder("-".repeat(19)).append("\n  ");
-
-        for (int i = 0; i < 8; i++)
-            builder.append(i).append(" ");
-        builder.append(8).append("\n");
-
-        for (int y = 0; y < 9; y++) {
-            builder.append(y).append(" ");
-            for (int x = 0; x < 8; x++)
-                builder.append(matrix[y][x].isPath() ? "*" : "_").append(" ");
-            builder.append(matrix[y][8].isPath() ? "*" : "_").append("\n");
-        }
-
-        builder.append("-".repeat(19));
-        return builder.toString();
-    }
+/**
+ * Storage of the matrix cell codes (one byte per cell, row-major).
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see Matrix
+ * @see HeapCellStore
+ * @see MappedCellStore
+ */
+interface CellStore {
+    /**
+     * Returns the number of the cells.
+     *
+     * @return number of the cells.
+     */
+    int size();
 
-    @Override
-    public Matrix clone() {
-        try {
-            var clone = (Matrix) super.clone();
-            clone.matrix = new Point[9][9];
+    /**
+     * Returns the cell code.
+     *
+     * @param index cell index.
+     * @return cell code.
+     */
+    byte get(int index);
 
-            for (int i = 0; i < 9; i++)
-                clone.matrix[i] = new Point[9];
+    /**
+     * Replaces the cell code.
+     *
+     * @param index cell index.
+     * @param code  cell code.
+     */
+    void set(int index, byte code);
 
-            for (int y = 0; y < 9; y++)
-                for (int x = 0; x < 9; x++)
-                    clone.matrix[x][y] = matrix[x][y].clone();
+    /**
+     * Returns a writable copy of the storage. The copy may share the unchanged cells with this storage.
+     *
+     * @return writable copy of the storage.
+     */
+    CellStore copy();
 
-            return clone;
-        } catch (CloneNotSupportedException e) {
-            throw new AssertionError();
-        }
-    }
+    /**
+     * Marks the cells as shared with the future copies. The following writes copy the cells first,
+     * so the copies never write to this storage and can be made by several threads at once.
+     */
+    void share();
 }
 
 /**
- * Point representation.
+ * Cell codes stored on the heap in fixed-size pages. Copies share the pages and copy
+ * only the written ones (copy-on-write), so <code>copy()</code> takes constant time.
+ * Pages which were never written may be read from a base buffer (e.g. a memory-mapped file).
  *
  * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
- * @see Matrix
+ * @see CellStore
+ * @see MappedCellStore
  */
-class Point implements Cloneable {
+class HeapCellStore implements CellStore {
 
     /**
-     * X-coordinate.
+     * Page size is <code>1 << PAGE_SHIFT</code> cells.
      */
-    private final int x;
+    private static final int PAGE_SHIFT = 12;
 
     /**
-     * Y-coordinate.
+     * Mask of the cell index inside its page.
      */
-    private final int y;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
 
     /**
-     * Flag indicating if this point is included into the path.
+     * Number of the cells.
      */
-    private boolean path = false;
+    private final int size;
 
     /**
-     * Point's cell type. Free for default.
+     * Pages of the cell codes. A null page is read from <code>base</code>.
      */
-    private Cell cell = AirCell.FREE;
+    private byte[][] pages;
 
-    public Point(int x, int y) {
-        this.x = x;
-        this.y = y;
+    /**
+     * Pages owned by this store, they can be written in place.
+     */
+    private boolean[] owned;
+
+    /**
+     * Indicates if the pages table is shared with a copy.
+     */
+    private boolean shared;
+
+    /**
+     * Nullable base cell codes which are never written.
+     */
+    private final ByteBuffer base;
+
+    public HeapCellStore(int size) {
+        this.size = size;
+        this.pages = new byte[pagesCount(size)][];
+        this.owned = new boolean[pages.length];
+        this.base = null;
+
+        for (int p = 0; p < pages.length; p++) {
+            pages[p] = new byte[pageSize(p)];
+            owned[p] = true;
+        }
     }
 
-    public int getX() {
-        return x;
+    /**
+     * Initialization of a store which reads the cell codes from <code>base</code> until they are written.
+     *
+     * @param base base cell codes.
+     */
+    public HeapCellStore(ByteBuffer base) {
+        this.size = base.capacity();
+        this.pages = new byte[pagesCount(size)][];
+        this.owned = new boolean[pages.length];
+        this.base = base;
     }
 
-    public int getY() {
-        return y;
+    private HeapCellStore(HeapCellStore other) {
+        this.size = other.size;
+        this.pages = other.pages;
+        this.base = other.base;
+        this.shared = true;
     }
 
-    public boolean isPath() {
-        return path;
+    /**
+     * Returns the number of pages needed for the given number of the cells.
+     *
+     * @param size number of the cells.
+     * @return number of pages.
+     */
+    private static int pagesCount(int size) {
+        return (int) (((long) size + PAGE_MASK) >>> PAGE_SHIFT);
     }
 
-    public Cell getCell() {
-        return cell;
+    /**
+     * Returns the number of the cells in the page (the last page may be shorter).
+     *
+     * @param page page index.
+     * @return number of the cells in the page.
+     */
+    private int pageSize(int page) {
+        return Math.min(PAGE_MASK + 1, size - (page << PAGE_SHIFT));
     }
 
-    public void setPath(boolean path) {
-        this.path = path;
+    /**
+     * Returns the page which can be written in place. Copies the pages table and the page if
+     * they are shared.
+     *
+     * @param page page index.
+     * @return writable page.
+     */
+    private byte[] writablePage(int page) {
+        if (shared) {
+            pages = pages.clone();
+            owned = new boolean[pages.length];
+            shared = false;
+        }
+
+        if (!owned[page]) {
+            var copy = new byte[pageSize(page)];
+            var from = page << PAGE_SHIFT;
+
+            if (pages[page] != null) System.arraycopy(pages[page], 0, copy, 0, copy.length);
+            else base.get(from, copy);
+
+            pages[page] = copy;
+            owned[page] = true;
+        }
+
+        return pages[page];
     }
 
-    public void setCell(Cell cell) {
-        this.cell = cell;
+    @Override
+    public int size() {
+        return size;
     }
 
     @Override
-    public Point clone() {
-        try {
-            var clone = (Point) super.clone();
-            clone.cell = cell;
-            clone.path = path;
-            return clone;
-        } catch (CloneNotSupportedException e) {
-            throw new AssertionError();
-        }
+    public byte get(int index) {
+        var page = pages[index >>> PAGE_SHIFT];
+        return page != null ? page[index & PAGE_MASK] : base.get(index);
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        var point = (Point) o;
-        return x == point.x && y == point.y;
+    public void set(int index, byte code) {
+        writablePage(index >>> PAGE_SHIFT)[index & PAGE_MASK] = code;
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(x, y);
+    public CellStore copy() {
+        share();
+        return new HeapCellStore(this);
     }
 
     @Override
-    public String toString() {
-        return String.format("[%d,%d]", getX(), getY());
+    public void share() {
+        shared = true;
     }
 }
 
 /**
- * Sea map generator class.
+ * Cell codes stored off the heap in a memory-mapped file region. A read-only mapping
+ * can be shared by several processes. Copies read the mapping until they are written,
+ * written pages are copied to the heap.
  *
  * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
- * @see Backtracking
- * @see AStar
+ * @see CellStore
+ * @see MapFile
  */
-class GameData implements Cloneable {
+class MappedCellStore implements CellStore {
 
     /**
-     * Random numbers generator.
+     * Mapped cell codes.
      */
-    private static final Random RANDOM = new Random();
+    private final ByteBuffer cells;
 
-    /**
-     * 9x9 points matrix.
-     */
-    private Matrix matrix = new Matrix();
+    public MappedCellStore(ByteBuffer cells) {
+        this.cells = cells;
+    }
 
-    /**
-     * Jack Sparrow (Main hero) initial spawn coordinates.
-     */
-    private Point jackSparrow;
+    @Override
+    public int size() {
+        return cells.capacity();
+    }
 
-    /**
-     * Davy Jones (Enemy) initial spawn coordinates.
-     */
-    private Point davyJones;
+    @Override
+    public byte get(int index) {
+        return cells.get(index);
+    }
 
-    /**
-     * Kraken (Removable Enemy) initial spawn coordinates.
-     */
-    private Point kraken;
+    @Override
+    public void set(int index, byte code) {
+        cells.put(index, code);
+    }
+
+    @Override
+    public CellStore copy() {
+        return new HeapCellStore(cells);
+    }
+
+    @Override
+    public void share() {
+        // Copies read the mapping and never write to it
+    }
+}
+
+/**
+ * Matrix representation of an arbitrary size. Cells are stored in a flat row-major storage
+ * of cell codes (<code>index = y * width + x</code>), besides the cells keeps the bitboard
+ * layers of the map (safe, hazard, entity cells) in sync with them. The path is not a part
+ * of the map, it is an overlay kept by <code>GameData</code>.
+ * Cell codes and the safe, hazard, and entity layers are either on the heap or in a memory-mapped file.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see GameData
+ * @see Point
+ * @see BitBoard
+ * @see CellStore
+ * @see Cloneable
+ */
+class Matrix implements Cloneable {
 
     /**
-     * Rock (Enemy) initial spawn coordinates.
+     * Default matrix size (9x9).
      */
-    private Point rock;
+    public static final int DEFAULT_SIZE = 9;
 
     /**
-     * Chest (Exit) initial spawn coordinates.
+     * Matrix width (x-coordinates range).
      */
-    private Point chest;
+    private final int width;
 
     /**
-     * Tortuga (Island, grants ability to kill kraken after visiting) initial spawn coordinates.
+     * Matrix height (y-coordinates range).
      */
-    private Point tortuga;
+    private final int height;
 
     /**
-     * Tries to spawn an enemy by the given coordinates.
+     * Row-major cell codes.
      *
-     * @param cell enemy cell.
-     * @param x    x-coordinate.
-     * @param y    y-coordinate.
-     * @return true if the spawn result is success, false otherwise.
-     * @see EnemyCell
+     * @see CellCodes
      */
-    private boolean trySetEnemy(Cell cell, int x, int y) {
-        if (matrix.getPoint(x, y).isPresent()) {
+    private CellStore cells;
 
-            var point = matrix.getPoint(x, y).get();
-            var matrixCell = point.getCell();
+    /**
+     * Row-major numbers of the enemies perceiving the cells. An air cell is a perception cell
+     * if its number is positive.
+     */
+    private CellStore perception;
 
-            if (matrixCell.isFree() || cell == matrixCell) {
-                point.setCell(cell);
-                return true;
-            }
-        }
+    /**
+     * Layer of cells which are safe to step on.
+     */
+    private BitBoard safe;
 
-        return false;
+    /**
+     * Layer of dangerous cells (enemies and their perception zones).
+     */
+    private BitBoard hazard;
+
+    /**
+     * Layer of cells occupied by entities (enemies, Tortuga, chest).
+     */
+    private BitBoard entity;
+
+    /**
+     * Precomputed adjacency tables.
+     *
+     * @see Adjacency
+     */
+    private final Adjacency adjacency;
+
+    /**
+     * Initialization of an empty 9x9 matrix.
+     */
+    public Matrix() {
+        this(DEFAULT_SIZE, DEFAULT_SIZE);
     }
 
     /**
-     * Tries to spawn a safe object by the given coordinates.
+     * Initialization of an empty matrix.
      *
-     * @param cell safe object cell.
-     * @param x    x-coordinate.
-     * @param y    y-coordinate.
-     * @return true if the spawn result is success, false otherwise.
-     * @see ObjectCell
+     * @param width  matrix width.
+     * @param height matrix height.
+     * @throws IllegalArgumentException if the size is not positive or too large.
      */
-    private boolean trySetObject(Cell cell, int x, int y) {
-        if (matrix.getPoint(x, y).isPresent()) {
+    public Matrix(int width, int height) {
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid matrix size");
+
+        this.width = width;
+        this.height = height;
+        this.cells = new HeapCellStore(width * height);
+        this.perception = new HeapCellStore(width * height);
+        this.safe = new BitBoard(width, height);
+        this.hazard = new BitBoard(width, height);
+        this.entity = new BitBoard(width, height);
+        this.adjacency = Adjacency.of(width, height);
+
+        safe.fill();
+    }
 
-            var point = matrix.getPoint(x, y).get();
-            var matrixCell = point.getCell();
+    /**
+     * Initialization of a matrix over the already filled storages (e.g. memory-mapped ones).
+     *
+     * @param width      matrix width.
+     * @param height     matrix height.
+     * @param cells      cell codes.
+     * @param perception perception numbers.
+     * @param safe       safe layer.
+     * @param hazard     hazard layer.
+     * @param entity     entity layer.
+     * @see MapFile
+     */
+    Matrix(
+            int width, int height, CellStore cells, CellStore perception,
+            BitBoard safe, BitBoard hazard, BitBoard entity
+    ) {
+        this.width = width;
+        this.height = height;
+        this.cells = cells;
+        this.perception = perception;
+        this.safe = safe;
+        this.hazard = hazard;
+        this.entity = entity;
+        this.adjacency = Adjacency.of(width, height);
+    }
 
-            if (matrixCell.isFree() && matrixCell.isSafe() || cell == matrixCell) {
-                point.setCell(cell);
-                return true;
-            }
-        }
+    public int getWidth() {
+        return width;
+    }
 
-        return false;
+    public int getHeight() {
+        return height;
     }
 
     /**
-     * Tries to spawn an air by the given coordinates. Ignores unsuccessful tries.
+     * Returns the number of the cells.
      *
-     * @param cell air cell.
-     * @param x    x-coordinate.
-     * @param y    y-coordinate.
-     * @see AirCell
+     * @return number of the cells.
      */
-    private void trySetAir(Cell cell, int x, int y) {
-        trySetEnemy(cell, x, y);
+    public int size() {
+        return cells.size();
     }
 
     /**
-     * Tries to spawn Jack Sparrow by the given coordinates.
+     * Indicates if the coordinates are inside the matrix.
      *
      * @param x x-coordinate.
      * @param y y-coordinate.
-     * @return true if the spawn result is success, false otherwise.
+     * @return true if the coordinates are inside the matrix, false otherwise.
      */
-    private boolean trySetJackSparrow(int x, int y) {
-        if (matrix.getPoint(x, y).isPresent()) {
-            var cell = matrix.getPoint(x, y).get().getCell();
-            if (cell.isFree() || cell == ObjectCell.TORTUGA) {
-                jackSparrow = matrix.getPoint(x, y).get();
-                return true;
-            }
-        }
-
-        return false;
+    public boolean contains(int x, int y) {
+        return y >= 0 && y < height && x >= 0 && x < width;
     }
 
     /**
-     * Tries to spawn Davy Jones by the given coordinates.
+     * Returns the point by the coordinates if it exists.
      *
      * @param x x-coordinate.
      * @param y y-coordinate.
-     * @return true if the spawn result is success, false otherwise.
+     * @return point by the coordinates if it exists, <code>Optional.empty()</code> otherwise.
      */
-    private boolean trySetDavyJones(int x, int y) {
-        if (trySetEnemy(EnemyCell.DAVY_JONES, x, y)) {
-
-            if (matrix.getPoint(x, y).isPresent()) {
-                matrix.neighbors(x, y).forEach(c -> trySetAir(AirCell.PERCEPTION, c.getX(), c.getY()));
-                matrix.corners(x, y).forEach(c -> trySetAir(AirCell.PERCEPTION, c.getX(), c.getY()));
-                davyJones = matrix.getPoint(x, y).get();
-
-                return true;
-            }
-        }
-
-        return false;
+    public Optional<Point> getPoint(int x, int y) {
+        if (!contains(x, y)) return Optional.empty();
+        return Optional.of(new Point(x, y));
     }
 
     /**
-     * Tries to spawn Davy Jones by the given coordinates.
+     * Returns the index of the point by its coordinates.
      *
      * @param x x-coordinate.
      * @param y y-coordinate.
-     * @return true if the spawn result is success, false otherwise.
+     * @return cell index.
      */
-    public boolean trySetKraken(int x, int y) {
-        if (matrix.getPoint(x, y).isPresent()) {
-
-            var point = matrix.getPoint(x, y).get();
-            var matrixCell = point.getCell();
-
-            var newCell = matrixCell == KrakenEnemiesFamilyCell.ROCK
-                    ? KrakenEnemiesFamilyCell.KRAKEN_ROCK
-                    : KrakenEnemiesFamilyCell.KRAKEN;
-
-            if (matrixCell.isTypeOf(KrakenEnemiesFamilyCell.class) || matrixCell.isFree()) {
-                point.setCell(newCell);
-                matrix.neighbors(x, y).forEach(c -> trySetAir(AirCell.PERCEPTION, c.getX(), c.getY()));
-                kraken = matrix.getPoint(x, y).get();
-
-                return true;
-            }
-        }
-
-        return false;
+    public int index(int x, int y) {
+        return y * width + x;
     }
 
     /**
-     * Tries to remove Kraken from the map.
-     * Ignores unsuccessful tries (i.e. Kraken is already removed / not spawned).
+     * Returns the index of the point.
+     *
+     * @param point point.
+     * @return cell index.
      */
-    public void tryRemoveKraken() {
-        if (kraken == null) return;
-
-        var newCell = kraken.getCell() == KrakenEnemiesFamilyCell.KRAKEN_ROCK
-                ? KrakenEnemiesFamilyCell.ROCK
-                : AirCell.FREE;
+    public int index(Point point) {
+        return index(point.getX(), point.getY());
+    }
 
-        kraken.setCell(newCell);
+    /**
+     * Returns the point by its index.
+     *
+     * @param index cell index.
+     * @return point by the index.
+     */
+    public Point point(int index) {
+        return new Point(index % width, index / width);
+    }
 
-        var optPoint = matrix.getPoint(kraken.getX(), kraken.getY());
-        optPoint.ifPresent(point -> point.setCell(newCell));
+    /**
+     * Returns the cell by its index.
+     *
+     * @param index cell index.
+     * @return cell.
+     */
+    public Cell getCell(int index) {
+        return CellCodes.CELLS[cells.get(index)];
+    }
 
-        matrix.neighbors(kraken.getX(), kraken.getY()).forEach(c -> trySetAir(AirCell.FREE, c.getX(), c.getY()));
+    /**
+     * Returns the cell code by its index.
+     *
+     * @param index cell index.
+     * @return cell code.
+     */
+    byte getCode(int index) {
+        return cells.get(index);
+    }
 
-        // Force update DavyJones perception zones in order to restore some of them
-        // After Kraken removal
-        trySetDavyJones(davyJones.getX(), davyJones.getY());
+    /**
+     * Returns the number of the enemies perceiving the cell.
+     *
+     * @param index cell index.
+     * @return number of the enemies.
+     */
+    int getPerception(int index) {
+        return perception.get(index);
+    }
 
+    /**
+     * Replaces the number of the enemies perceiving the cell. Does not change the cell code.
+     *
+     * @param index cell index.
+     * @param count number of the enemies.
+     */
+    void setPerception(int index, int count) {
+        perception.set(index, (byte) count);
     }
 
     /**
-     * Tries to spawn Rock by the given coordinates.
+     * Returns the cell by the coordinates.
      *
      * @param x x-coordinate.
      * @param y y-coordinate.
-     * @return true if the spawn result is success, false otherwise.
+     * @return cell.
      */
-    private boolean trySetRock(int x, int y) {
-        if (matrix.getPoint(x, y).isPresent()) {
+    public Cell getCell(int x, int y) {
+        return getCell(index(x, y));
+    }
+
+    /**
+     * Sets the cell by the given coordinates and updates the layers.
+     *
+     * @param x    x-coordinate.
+     * @param y    y-coordinate.
+     * @param cell new cell.
+     */
+    public void setCell(int x, int y, Cell cell) {
+        setCode(index(x, y), cell.code());
+    }
 
-            var point = matrix.getPoint(x, y).get();
-            var matrixCell = point.getCell();
+    /**
+     * Sets the cell code by the given index and updates the layers.
+     *
+     * @param index cell index.
+     * @param code  new cell code.
+     * @see CellCodes
+     */
+    void setCode(int index, byte code) {
+        cells.set(index, code);
+        safe.set(index, CellCodes.SAFE[code]);
+        hazard.set(index, !CellCodes.SAFE[code]);
+        entity.set(index, !CellCodes.AIR[code]);
+    }
 
-            var newCell = matrixCell == KrakenEnemiesFamilyCell.KRAKEN
-                    ? KrakenEnemiesFamilyCell.KRAKEN_ROCK
-                    : KrakenEnemiesFamilyCell.ROCK;
+    /**
+     * Indicates if the point by the given index is safe to step on.
+     *
+     * @param index cell index.
+     * @return true if the point is safe, false otherwise.
+     */
+    public boolean isSafe(int index) {
+        return safe.get(index);
+    }
 
-            if (matrixCell.isTypeOf(KrakenEnemiesFamilyCell.class) || matrixCell.isFree()) {
-                point.setCell(newCell);
-                rock = point;
+    public BitBoard getSafe() {
+        return safe;
+    }
 
-                return true;
-            }
-        }
+    public BitBoard getHazard() {
+        return hazard;
+    }
 
-        return false;
+    public BitBoard getEntity() {
+        return entity;
+    }
+
+    public Adjacency getAdjacency() {
+        return adjacency;
     }
 
     /**
-     * Tries to spawn chest by the given coordinates.
+     * Returns available (size=[2, 4]) Von-Neumann neighbors of the point by its coordinates.
      *
      * @param x x-coordinate.
      * @param y y-coordinate.
-     * @return true if the spawn result is success, false otherwise.
+     * @return opened stream of available Von-Neumann neighbors of the point.
      */
-    private boolean trySetChest(int x, int y) {
-        if (trySetObject(ObjectCell.CHEST, x, y)) {
-
-            if (matrix.getPoint(x, y).isPresent()) {
-                chest = matrix.getPoint(x, y).get();
-                return true;
-            }
-        }
-
-        return false;
+    public Stream<Point> neighbors(int x, int y) {
+        return Stream.of(
+                        getPoint(x, y + 1), getPoint(x, y - 1),
+                        getPoint(x + 1, y), getPoint(x - 1, y)
+                )
+                .filter(Optional::isPresent)
+                .map(Optional::get);
     }
 
     /**
-     * Tries to spawn Tortuga by the given coordinates.
+     * Returns available (size=[1, 4]) diagonal neighbors of the point by its coordinates.
      *
      * @param x x-coordinate.
      * @param y y-coordinate.
-     * @return true if the spawn result is success, false otherwise.
+     * @return opened stream of available diagonal neighbors of the point.
      */
-    private boolean trySetTortuga(int x, int y) {
-        if (trySetObject(ObjectCell.TORTUGA, x, y)) {
-
-            if (matrix.getPoint(x, y).isPresent()) {
-                tortuga = matrix.getPoint(x, y).get();
-                return true;
-            }
-        }
-
-        return false;
+    public Stream<Point> corners(int x, int y) {
+        return Stream.of(
+                        getPoint(x + 1, y + 1), getPoint(x + 1, y - 1),
+                        getPoint(x - 1, y + 1), getPoint(x - 1, y - 1)
+                )
+                .filter(Optional::isPresent)
+                .map(Optional::get);
     }
 
     /**
-     * Tries to mark the point as "included to the path" by the given coordinates.
-     * Ignores unsuccessful tries
+     * Returns available (size=[2, 4]) 2nd-order Von-neumann neighbors of the point by its coordinates.
      *
      * @param x x-coordinate.
      * @param y y-coordinate.
+     * @return opened stream of available 2nd-order Von-neumann neighbors of the point.
+     * @see AStar
      */
-    public void setPath(int x, int y) {
-        matrix.getPoint(x, y).ifPresent(p -> p.setPath(true));
+    public Stream<Point> secondNeighbors(int x, int y) {
+        return Stream.of(
+                        getPoint(x, y + 2), getPoint(x, y - 2),
+                        getPoint(x + 2, y), getPoint(x - 2, y)
+                )
+                .filter(Optional::isPresent)
+                .map(Optional::get);
     }
 
     /**
-     * Tries to mark the point as "NOT included to the path" by the given coordinates.
-     * Ignores unsuccessful tries
+     * First scenario moves.
      *
      * @param x x-coordinate.
      * @param y y-coordinate.
+     * @return stream of neighbors + corners of the given point.
      */
-    public void unsetPath(int x, int y) {
-        matrix.getPoint(x, y).ifPresent(p -> p.setPath(false));
+    public Stream<Point> firstScenario(int x, int y) {
+        return Stream.concat(neighbors(x, y), corners(x, y));
     }
 
     /**
-     * Generates a random integer in the range [0, 8].
+     * Writes Von-Neumann neighbors of all the cells of <code>cells</code> to <code>out</code>.
      *
-     * @return random integer in the range [0, 8].
+     * @param cells source cells.
+     * @param out   resulting cells, must not be <code>cells</code>.
      */
-    private Point getRandomPoint() {
-        var optPos = matrix.getPoint(RANDOM.nextInt(0, 9), RANDOM.nextInt(0, 9));
-        if (optPos.isEmpty() || (optPos.get().getX() == 0 && optPos.get().getY() != 0))
-            return getRandomPoint();
-        return optPos.get();
+    public void neighbors(BitBoard cells, BitBoard out) {
+        out.clear();
+        out.orShifted(cells, 0, 1);
+        out.orShifted(cells, 0, -1);
+        out.orShifted(cells, 1, 0);
+        out.orShifted(cells, -1, 0);
     }
 
     /**
-     * Generates a sea map with respect to the given points.
+     * Writes diagonal neighbors of all the cells of <code>cells</code> to <code>out</code>.
      *
-     * @param points Parsed coordinates from the input.
-     * @throws IllegalArgumentException if any point is incorrect with respect to the game rules.
+     * @param cells source cells.
+     * @param out   resulting cells, must not be <code>cells</code>.
      */
-    public GameData(List<Point> points) {
-        var generationResult = Stream.of(
-                trySetDavyJones(points.get(1).getX(), points.get(1).getY()),
-                trySetKraken(points.get(2).getX(), points.get(2).getY()),
-                trySetRock(points.get(3).getX(), points.get(3).getY()),
-                trySetChest(points.get(4).getX(), points.get(4).getY()),
-                trySetTortuga(points.get(5).getX(), points.get(5).getY()),
-                trySetJackSparrow(points.get(0).getX(), points.get(0).getY())
-        ).allMatch(x -> x);
-
-        if (!generationResult)
-            throw new IllegalArgumentException("Failed to spawn game entities!");
+    public void corners(BitBoard cells, BitBoard out) {
+        out.clear();
+        out.orShifted(cells, 1, 1);
+        out.orShifted(cells, 1, -1);
+        out.orShifted(cells, -1, 1);
+        out.orShifted(cells, -1, -1);
     }
 
     /**
-     * Generates a sea map with random valid coordinates. Jack Sparrow is always spawned
-     * at (0, 0) point.
+     * Writes 2nd-order Von-Neumann neighbors of all the cells of <code>cells</code> to <code>out</code>.
+     *
+     * @param cells source cells.
+     * @param out   resulting cells, must not be <code>cells</code>.
      */
-    public GameData() {
-        var optPoint = matrix.getPoint(0, 0);
-
-        optPoint.ifPresent(point -> trySetJackSparrow(point.getX(), point.getY()));
-
-        var point = getRandomPoint();
-        while (!trySetDavyJones(point.getX(), point.getY()))
-            point = getRandomPoint();
-
-        point = getRandomPoint();
-        while (!trySetKraken(point.getX(), point.getY()))
-            point = getRandomPoint();
-
-        point = getRandomPoint();
-        while (!trySetRock(point.getX(), point.getY()))
-            point = getRandomPoint();
-
-        point = getRandomPoint();
-        while (!trySetChest(point.getX(), point.getY()))
-            point = getRandomPoint();
-
-        point = getRandomPoint();
-        while (!trySetTortuga(point.getX(), point.getY()))
-            point = getRandomPoint();
+    public void secondNeighbors(BitBoard cells, BitBoard out) {
+        out.clear();
+        out.orShifted(cells, 0, 2);
+        out.orShifted(cells, 0, -2);
+        out.orShifted(cells, 2, 0);
+        out.orShifted(cells, -2, 0);
     }
 
-    public Matrix getMatrix() {
-        return matrix;
+    /**
+     * Writes first scenario moves (neighbors + corners) of all the cells of <code>cells</code> to <code>out</code>.
+     *
+     * @param cells source cells.
+     * @param out   resulting cells, must not be <code>cells</code>.
+     */
+    public void firstScenario(BitBoard cells, BitBoard out) {
+        neighbors(cells, out);
+        out.orShifted(cells, 1, 1);
+        out.orShifted(cells, 1, -1);
+        out.orShifted(cells, -1, 1);
+        out.orShifted(cells, -1, -1);
     }
 
-    public Point getJackSparrow() {
-        return jackSparrow;
+    /**
+     * Marks the cells and the layers as shared with the future clones, so the clones never write
+     * to this matrix and it can be read by several threads.
+     */
+    public void share() {
+        cells.share();
+        perception.share();
+        safe.share();
+        hazard.share();
+        entity.share();
     }
 
-    public Point getKraken() {
-        return kraken;
-    }
+    /**
+     * Renders the path over the matrix.
+     *
+     * @param path path layer of the matrix size.
+     * @return rendered path.
+     */
+    public String toString(BitBoard path) {
+        var builder = new StringBuilder("-".repeat(2 * height + 1)).append("\n  ");
 
-    public Point getChest() {
-        return chest;
-    }
+        for (int i = 0; i < height - 1; i++)
+            builder.append(i).append(" ");
+        builder.append(height - 1).append("\n");
 
-    public Point getTortuga() {
-        return tortuga;
+        for (int x = 0; x < width; x++) {
+            builder.append(x).append(" ");
+            for (int y = 0; y < height - 1; y++)
+                builder.append(path.get(index(x, y)) ? "*" : "_").append(" ");
+            builder.append(path.get(index(x, height - 1)) ? "*" : "_").append("\n");
+        }
+
+        builder.append("-".repeat(2 * height + 1));
+        return builder.toString();
     }
 
     @Override
     public String toString() {
-        return matrix.toString();
+        return toString(new BitBoard(width, height));
     }
 
-    @Override
-    public GameData clone() {
+    /**
+     * Returns a copy of this matrix in constant time. The cells and the layers are shared
+     * with the copy until they are written (copy-on-write).
+     *
+     * @return copy of this matrix.
+     */
+    @Override
+    public Matrix clone() {
         try {
-            var clone = (GameData) super.clone();
-            clone.matrix = matrix.clone();
-            clone.chest = chest;
-            clone.davyJones = davyJones;
-            clone.jackSparrow = jackSparrow;
-            clone.kraken = kraken;
-            clone.rock = rock;
-            clone.tortuga = tortuga;
+            var clone = (Matrix) super.clone();
+            clone.cells = cells.copy();
+            clone.perception = perception.copy();
+            clone.safe = safe.clone();
+            clone.hazard = hazard.clone();
+            clone.entity = entity.clone();
             return clone;
         } catch (CloneNotSupportedException e) {
             throw new AssertionError();
@@ -756,782 +1143,5796 @@ class GameData implements Cloneable {
 }
 
 /**
- * Stores the most successful (during the algorithm execution, not always)
- * result of algorithm's run from start to target. Nullable.
+ * Point representation. Immutable coordinates of a matrix cell.
  *
  * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
- * @see Backtracking
- * @see AStar
- * @see OutputHelper
+ * @see Matrix
  */
-class Snapshot {
+class Point {
 
     /**
-     * Shortest path points from start to target.
+     * X-coordinate.
      */
-    private List<Point> steps;
+    private final int x;
 
     /**
-     * GameData copy.
+     * Y-coordinate.
      */
-    private GameData gameData;
+    private final int y;
 
-    public Snapshot(List<Point> steps, GameData gameData) {
-        this.steps = steps;
-        this.gameData = gameData;
+    public Point(int x, int y) {
+        this.x = x;
+        this.y = y;
     }
 
-    public List<Point> getSteps() {
-        return steps;
+    public int getX() {
+        return x;
     }
 
-    public void setSteps(List<Point> steps) {
-        this.steps = steps;
+    public int getY() {
+        return y;
     }
 
-    public GameData getGameData() {
-        return gameData;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        var point = (Point) o;
+        return x == point.x && y == point.y;
     }
 
-    public void setGameData(GameData gameData) {
-        this.gameData = gameData;
+    @Override
+    public int hashCode() {
+        return Objects.hash(x, y);
     }
 
     @Override
     public String toString() {
-        var shortestPathString = steps.stream()
-                .map(Point::toString)
-                .collect(Collectors.joining(" "));
-
-        return String.format("%d\n%s\n%s", steps.size(), shortestPathString, gameData.getMatrix());
+        return String.format("[%d,%d]", getX(), getY());
     }
 }
 
 /**
- * Common logic for searching algorithms with respect to game rules.
+ * Bitboard representation of a matrix layer. Every cell is a single bit, cells are packed
+ * row-major (<code>index = y * width + x</code>) into longs, so 9x9 map takes exactly 2 longs.
+ * Moves of the whole layer are computed by shift-and-mask operations.
+ * <p>
+ * The longs are stored in pages on the heap. Clones share the pages and copy only the written
+ * ones (copy-on-write). Pages which were never written may be read from an off-heap buffer
+ * (e.g. a memory-mapped file).
  *
  * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
- * @see Backtracking
- * @see AStar
- * @see TestHelper
+ * @see Matrix
+ * @see MapFile
  */
-abstract class SearchingAlgorithm {
+class BitBoard implements Cloneable {
+
     /**
-     * Current game data during the execution of a partial run from start to target.
+     * Column masks cache for each board size. Used to drop the bits wrapped over the row edges.
      */
-    protected GameData gameData;
+    private static final Map<Long, long[][]> COLUMN_MASKS = new HashMap<>();
 
     /**
-     * Game scenario
+     * Maximal absolute horizontal shift supported by the column masks.
      */
-    protected final int scenario;
+    private static final int MAX_SHIFT = 2;
 
     /**
-     * Stores the current snapshot during the execution of a partial run from start to target.
+     * Board width.
      */
-    protected Snapshot currentSnapshot;
+    private final int width;
 
     /**
-     * Stores the current path steps during the execution of a partial run from start to target.
+     * Board height.
      */
-    protected final Stack<Point> steps = new Stack<>();
+    private final int height;
 
     /**
-     * Target point (Tortuga + Kraken + Chest run or just Chest run)
+     * Page size is <code>1 << PAGE_SHIFT</code> longs.
      */
-    protected Point target;
+    private static final int PAGE_SHIFT = 6;
 
     /**
-     * Stores the minimum steps count over a run from start to target.
+     * Mask of the long index inside its page.
      */
-    protected int minStepsCount = Integer.MAX_VALUE;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
 
     /**
-     * Performs runs from Tortuga to Kraken's weak points (corners).
-     * Returns a list of these runs sorted by path length.
-     *
-     * @param tortugaGameData game map with already executed run spawn->tortuga.
-     * @return list of runs tortuga->kraken_weak_point sorted by run's path in ascending order.
+     * Number of the longs.
      */
-    private List<Snapshot> krakenCornersRuns(GameData tortugaGameData) {
-        return gameData.getMatrix().corners(gameData.getKraken().getX(), gameData.getKraken().getY())
-                .map(p -> partialRun(gameData.getTortuga(), p, tortugaGameData.clone()))
-                .filter(Objects::nonNull)
-                .sorted(Comparator.comparingInt(s -> s.getSteps().size()))
-                .toList();
-    }
+    private final int length;
 
     /**
-     * Indicates if the point is dangerous.
-     *
-     * @param point current point.
-     * @return true if the point is dangerous, false otherwise.
+     * Pages of the packed cells. A null page is read from <code>buffer</code>.
      */
-    protected boolean isLosing(Point point) {
-        return !point.getCell().isSafe();
-    }
+    private long[][] pages;
 
     /**
-     * Takes the snapshot.
+     * Pages owned by this board, they can be written in place.
      */
-    protected void takeSnapshot() {
-        if (currentSnapshot == null || currentSnapshot.getSteps().size() > steps.size())
-            currentSnapshot = new Snapshot(new ArrayList<>(steps), gameData.clone());
-        else {
-            currentSnapshot.setSteps(steps);
-            currentSnapshot.setGameData(gameData);
-        }
-    }
+    private boolean[] owned;
 
     /**
-     * Takes the snapshot with the custom data.
-     *
-     * @param steps    custom steps.
-     * @param gameData custom game data.
+     * Indicates if the pages table is shared with a clone.
      */
-    protected void takeSnapshot(List<Point> steps, GameData gameData) {
-        if (currentSnapshot == null)
-            currentSnapshot = new Snapshot(steps, gameData);
-        else {
-            currentSnapshot.setSteps(steps);
-            currentSnapshot.setGameData(gameData);
-        }
-    }
-
-    public SearchingAlgorithm(GameData gameData, int scenario) {
-        this.gameData = gameData;
-        this.scenario = scenario;
-    }
+    private boolean shared;
 
     /**
-     * Performs run from defined <code>start</code> and <code>target</code> points.
-     *
-     * @param start    start point, not included to the path.
-     * @param target   target point, included to the path.
-     * @param gameData game data.
-     * @return resulting snapshot of the run (nullable).
+     * Nullable packed cells off the heap which are never written.
      */
-    public abstract Snapshot partialRun(Point start, Point target, GameData gameData);
+    private final LongBuffer buffer;
 
     /**
-     * Preforms 2 complete runs and chooses the best one.
-     * <ol>
-     *     <li>start->tortuga + tortuga->best_kraken + kraken->chest</li>
-     *     <li>start->chest without tortuga</li>
-     * </ol>
-     * <p>
-     * Best_kraken run is the best run from Tortuga to the one of Kraken's corners.
+     * Column masks of this board size indexed by <code>dx + MAX_SHIFT</code>.
      */
-    public Snapshot run() {
-        var initialGameData = gameData.clone();
-
-        var tortugaRun = partialRun(gameData.getJackSparrow(), gameData.getTortuga(), initialGameData.clone());
-        Snapshot combinedRun = null;
-
-        if (tortugaRun != null) {
-            var tortugaStartData = tortugaRun.getGameData().clone();
-
-            var krakenRuns = krakenCornersRuns(tortugaStartData);
-            var finalKrakenRun = krakenRuns.isEmpty() ? null : krakenRuns.get(0);
-
-            if (finalKrakenRun != null) {
-                var krakenStartData = finalKrakenRun.getGameData().clone();
-                krakenStartData.tryRemoveKraken();
-
-                if (!finalKrakenRun.getSteps().isEmpty()) {
-                    var nearKraken = finalKrakenRun.getSteps().get(finalKrakenRun.getSteps().size() - 1);
-                    var chestRun = partialRun(nearKraken, gameData.getChest(), krakenStartData);
+    private final long[][] columnMasks;
 
-                    if (chestRun != null) {
-                        var combinedList = new ArrayList<>(tortugaRun.getSteps());
-                        combinedList.addAll(finalKrakenRun.getSteps());
-                        combinedList.addAll(chestRun.getSteps());
-                        takeSnapshot(combinedList, chestRun.getGameData());
-
-                        combinedRun = currentSnapshot;
-                        currentSnapshot = null;
-                    }
-                }
-            }
+    /**
+     * Initialization of an empty board.
+     *
+     * @param width  board width.
+     * @param height board height.
+     */
+    public BitBoard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.length = words(width, height);
+        this.pages = new long[pagesCount(length)][];
+        this.owned = new boolean[pages.length];
+        this.buffer = null;
+        this.columnMasks = columnMasks(width, height);
+
+        for (int p = 0; p < pages.length; p++) {
+            pages[p] = new long[pageSize(p)];
+            owned[p] = true;
         }
-
-        var immediateRun = partialRun(gameData.getJackSparrow(), gameData.getChest(), initialGameData);
-
-        var result = Stream.of(combinedRun, immediateRun)
-                .filter(Objects::nonNull)
-                .sorted(Comparator.comparingInt(p -> p.getSteps().size()))
-                .toList();
-
-        return result.isEmpty() ? null : result.get(0);
     }
-}
-
-/**
- * Backtracking algorithm over a sea map. Uses greedy point selection and basic heuristic
- * as the optimizations.
- *
- * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
- * @see GameData
- * @see Snapshot
- * @see Point
- * @see SearchingAlgorithm
- */
-class Backtracking extends SearchingAlgorithm {
 
     /**
-     * Heuristic storage. Heuristic is given as a <code>distanceSquared(target)</code>
-     * for each point.
+     * Initialization of a board which reads the packed cells from the given buffer until they are written.
+     *
+     * @param width  board width.
+     * @param height board height.
+     * @param buffer buffer of <code>words(width, height)</code> longs.
      */
-    private final int[][] costs = new int[9][9];
+    public BitBoard(int width, int height, LongBuffer buffer) {
+        this.width = width;
+        this.height = height;
+        this.length = words(width, height);
+        this.pages = new long[pagesCount(length)][];
+        this.owned = new boolean[pages.length];
+        this.buffer = buffer;
+        this.columnMasks = columnMasks(width, height);
+    }
 
     /**
-     * Returns available moves excluding dangerous (except for Kraken), previously observed ones,
-     * and those which have less cost than computed current;
-     * in a list sorted by the distance to the target (greedy approach).
+     * Returns the number of pages needed for the given number of longs.
      *
-     * @param point current point.
-     * @return available moves.
+     * @param length number of longs.
+     * @return number of pages.
      */
-    private List<Point> moves(Point point) {
-        return gameData.getMatrix().firstScenario(point.getX(), point.getY())
-                .filter(p -> p.getCell().isSafe())
-                .filter(p -> costs[p.getX()][p.getY()] >= steps.size())
-                .sorted((p1, p2) -> distanceSquared(p1) - distanceSquared(p2))
-                .toList();
+    private static int pagesCount(int length) {
+        return (length + PAGE_MASK) >>> PAGE_SHIFT;
     }
 
     /**
-     * Returns squared euclidean distance from the given point to target.
+     * Returns the number of longs in the page (the last page may be shorter).
      *
-     * @param point comparator point value.
-     * @return squared euclidean distance from the given point to target.
+     * @param page page index.
+     * @return number of longs in the page.
      */
-    private int distanceSquared(Point point) {
-        return (int) (Math.pow(point.getX() - target.getX(), 2) + Math.pow(point.getY() - target.getY(), 2));
+    private int pageSize(int page) {
+        return Math.min(PAGE_MASK + 1, length - (page << PAGE_SHIFT));
     }
 
     /**
-     * Performs an intermediate backtracking approach for the point and its
-     * available neighbors + corners.
+     * Returns the page which can be written in place. Copies the pages table and the page if
+     * they are shared.
      *
-     * @param point current point.
+     * @param page page index.
+     * @return writable page.
      */
-    private void doRun(Point point) {
-        if (isLosing(point)) return;
-        if (steps.size() + 1 >= minStepsCount) return;
+    private long[] writablePage(int page) {
+        if (shared) {
+            pages = pages.clone();
+            owned = new boolean[pages.length];
+            shared = false;
+        }
 
-        steps.push(point);
-        gameData.setPath(point.getX(), point.getY());
-        var moves = moves(point);
+        if (!owned[page]) {
+            var copy = new long[pageSize(page)];
+            var from = page << PAGE_SHIFT;
 
-        if (point.equals(target)) {
-            takeSnapshot();
-            minStepsCount = steps.size();
-        } else {
-            updateNeighborCosts(point);
-            for (var p : moves)
-                doRun(p);
+            if (pages[page] != null) System.arraycopy(pages[page], 0, copy, 0, copy.length);
+            else buffer.get(from, copy);
+
+            pages[page] = copy;
+            owned[page] = true;
         }
 
-        gameData.unsetPath(point.getX(), point.getY());
-        steps.pop();
+        return pages[page];
     }
 
     /**
-     * Wraps backtracking run. Sets start and target, replaces game data,
-     * and then restores it after the run. Returns the best snapshot of this run.
+     * Returns the number of longs needed for the board of the given size.
      *
-     * @param start  start point.
-     * @param target target point.
-     * @param data   game data for the run.
-     * @return best snapshot of this run.
+     * @param width  board width.
+     * @param height board height.
+     * @return number of longs.
      */
-    @Override
-    public Snapshot partialRun(Point start, Point target, GameData data) {
-        if (start == target) {
-            takeSnapshot(new ArrayList<>(), gameData.clone());
-            var snapshotCopy = currentSnapshot;
-            currentSnapshot = null;
+    public static int words(int width, int height) {
+        return (int) (((long) width * height + 63) >>> 6);
+    }
 
-            return snapshotCopy;
+    /**
+     * Returns the column masks for the given board size. The mask for <code>dx</code> keeps only the cells
+     * which can be reached by the horizontal shift <code>dx</code> without wrapping over the row edge.
+     *
+     * @param width  board width.
+     * @param height board height.
+     * @return column masks indexed by <code>dx + MAX_SHIFT</code>.
+     */
+    private static long[][] columnMasks(int width, int height) {
+        synchronized (COLUMN_MASKS) {
+            return COLUMN_MASKS.computeIfAbsent(((long) width << 32) | height, key -> {
+                var masks = new long[2 * MAX_SHIFT + 1][words(width, height)];
+
+                for (int dx = -MAX_SHIFT; dx <= MAX_SHIFT; dx++)
+                    for (int y = 0; y < height; y++)
+                        for (int x = 0; x < width; x++)
+                            if (x - dx >= 0 && x - dx < width)
+                                masks[dx + MAX_SHIFT][(y * width + x) >>> 6] |= 1L << (y * width + x);
+
+                return masks;
+            });
         }
-
-        var tmpGameData = gameData.clone();
-        gameData = data;
-
-        cleanCosts();
-        if (isLosing(start)) return null;
-
-        this.target = target;
-        costs[start.getX()][start.getY()] = 0;
-        gameData.setPath(start.getX(), start.getY());
-
-        doRun(start);
-
-        gameData.unsetPath(start.getX(), start.getY());
-        costs[start.getX()][start.getY()] = Integer.MAX_VALUE;
-        cleanCosts();
-
-        // Force reset minStepsCount for other runs
-        minStepsCount = Integer.MAX_VALUE;
-        gameData = tmpGameData;
-
-        var snapshotCopy = currentSnapshot;
-        currentSnapshot = null;
-
-        return snapshotCopy;
     }
 
     /**
-     * Resets heuristic costs.
+     * Returns the long of the packed cells.
+     *
+     * @param i long index.
+     * @return packed cells.
      */
-    private void cleanCosts() {
-        for (int i = 0; i < 9; i++)
-            for (int j = 0; j < 9; j++)
-                costs[i][j] = Integer.MAX_VALUE;
+    long word(int i) {
+        var page = pages[i >>> PAGE_SHIFT];
+        return page != null ? page[i & PAGE_MASK] : buffer.get(i);
     }
 
     /**
-     * Updates the heuristic values for the point's neighbors.
+     * Replaces the long of the packed cells.
      *
-     * @param point current point.
+     * @param i    long index.
+     * @param word packed cells.
      */
-    private void updateNeighborCosts(Point point) {
-        var pointCost = costs[point.getX()][point.getY()];
-
-        moves(point).forEach(p -> costs[p.getX()][p.getY()] = Math.min(pointCost + 1, costs[p.getX()][p.getY()]));
-
-        if (scenario == 2)
-            gameData.getMatrix().secondNeighbors(point.getX(), point.getY())
-                    .filter(p -> {
-                        var middleX = Math.abs(point.getX() + p.getX()) / 2;
-                        var middleY = Math.abs(point.getY() + p.getY()) / 2;
-                        var middlePoint = gameData.getMatrix().getPoint(middleX, middleY);
+    void setWord(int i, long word) {
+        writablePage(i >>> PAGE_SHIFT)[i & PAGE_MASK] = word;
+    }
 
-                        return middlePoint.isPresent() && middlePoint.get().getCell().isSafe();
-                    })
-                    .filter(p -> p.getCell().isSafe())
-                    .forEach(p -> costs[p.getX()][p.getY()] = Math.min(pointCost + 2, costs[p.getX()][p.getY()]));
+    public int getWidth() {
+        return width;
     }
 
-    public Backtracking(GameData gameData, int scenario) {
-        super(gameData, scenario);
-        cleanCosts();
+    public int getHeight() {
+        return height;
     }
-}
 
-/**
- * A* algorithm over a sea map. Implementation is taken from the lecture 5
- * as the optimizations.
- *
- * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
- * @author Innopolis University F22-Introduction-to-AI course instructors
- * @see GameData
- * @see Snapshot
- * @see Point
- * @see SearchingAlgorithm
- */
-class AStar extends SearchingAlgorithm {
     /**
-     * Node containing a point, a parent, and the cost (length of the path from <code>start</code> to
-     * this point).
+     * Returns the bit of the cell.
      *
-     * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+     * @param index cell index.
+     * @return true if the bit is set, false otherwise.
      */
-    private class Node implements Comparable<Node> {
-
-        /**
-         * Parent node.
-         */
-        Node parent;
-
-        /**
-         * Corresponding point.
-         */
-        Point point;
-
-        /**
-         * G cost - length of the path from <code>start</code> to this point.
-         */
-
-        int gCost = 0;
-
-        public Node(Point point) {
-            this.point = point;
-        }
-
-        /**
-         * Comparison by the formula <code>f = g + h</code>
-         *
-         * <ol>
-         *     <li><code>g</code> = g cost</li>
-         *     <li><code>h</code> - heuristic function result</li>
-         * </ol>
-         *
-         * In this case <code>h = max(abs(x - target.x), abs(y - target.y))</code>
-         *
-         * @param o the object to be compared.
-         * @return f - o.f.
-         */
-        @Override
-        public int compareTo(Node o) {
-
-            var h = Math.max(
-                    Math.abs(point.getX() - target.getX()),
-                    Math.abs(point.getY() - target.getY())
-            );
-
-            var oh = Math.max(
-                    Math.abs(o.point.getX() - target.getX()),
-                    Math.abs(o.point.getY() - target.getY())
-            );
+    public boolean get(int index) {
+        return (word(index >>> 6) & (1L << index)) != 0;
+    }
 
-            var g = parent != null ? parent.gCost + 1 : 0;
-            var og = o.parent != null ? o.parent.gCost + 1 : 0;
+    /**
+     * Sets the bit of the cell.
+     *
+     * @param index cell index.
+     */
+    public void set(int index) {
+        setWord(index >>> 6, word(index >>> 6) | 1L << index);
+    }
 
-            return (h + g) - (oh + og);
-        }
+    /**
+     * Sets the bit of the cell to the given value.
+     *
+     * @param index cell index.
+     * @param value bit value.
+     */
+    public void set(int index, boolean value) {
+        if (value) set(index);
+        else clear(index);
     }
 
     /**
-     * Nodes matrix.
+     * Clears the bit of the cell.
+     *
+     * @param index cell index.
      */
-    private final Node[][] nodes = new Node[9][9];
+    public void clear(int index) {
+        setWord(index >>> 6, word(index >>> 6) & ~(1L << index));
+    }
 
     /**
-     * Queue for opened nodes.
+     * Clears all the bits.
      */
-    private final Queue<Node> open = new PriorityQueue<>();
+    public void clear() {
+        for (int i = 0; i < length; i++)
+            setWord(i, 0L);
+    }
 
     /**
-     * Collection of closed (observed) points.
+     * Sets all the bits of the board cells.
      */
-    private final Set<Node> closed = new HashSet<>();
+    public void fill() {
+        for (int i = 0; i < length; i++)
+            setWord(i, columnMasks[MAX_SHIFT][i]);
+    }
 
     /**
-     * Returns a node having the given point.
+     * Intersects this board with the given one.
      *
-     * @param point point.
-     * @return node having <code>point</code>.
+     * @param other board of the same size.
      */
-    private Node getNode(Point point) {
-        return nodes[point.getX()][point.getY()];
+    public void and(BitBoard other) {
+        for (int i = 0; i < length; i++)
+            setWord(i, word(i) & other.word(i));
     }
 
     /**
-     * Resets the data of the <code>nodes</code>.
+     * Removes the cells of the given board from this board.
+     *
+     * @param other board of the same size.
      */
-    private void cleanNodes() {
-        for (int y = 0; y < 9; y++)
-            for (int x = 0; x < 9; x++) {
-                nodes[x][y].parent = null;
-                nodes[x][y].gCost = 0;
-            }
+    public void andNot(BitBoard other) {
+        for (int i = 0; i < length; i++)
+            setWord(i, word(i) & ~other.word(i));
     }
 
     /**
-     * Returns available moves for the given <code>node</code>.
+     * Unites this board with the given one.
      *
-     * @param node node for which the available moves will be returned.
-     * @return list of nodes - available moves for the given <code>node</code>.
+     * @param other board of the same size.
      */
-    private List<Node> moves(Node node) {
-        return Stream.concat(
-                        gameData.getMatrix().neighbors(node.point.getX(), node.point.getY()),
-                        gameData.getMatrix().corners(node.point.getX(), node.point.getY())
-                )
-                .filter(p -> !closed.contains(getNode(p)) && (p.getCell().isSafe()))
-                .map(this::getNode)
-                .toList();
+    public void or(BitBoard other) {
+        for (int i = 0; i < length; i++)
+            setWord(i, word(i) | other.word(i));
     }
 
     /**
-     * Returns extra 4 second-order neighbors for the given <code>node</code>.
+     * Unites this board with the given board shifted by <code>(dx, dy)</code>.
+     * Bits shifted out of the board (including the wrapped ones) are dropped.
      *
-     * @param node node for which the available moves will be returned.
-     * @return list of nodes - extra 4 second-order neighbors for the given <code>node</code>.
-     */
-    private List<Node> secondScenarioMoves(Node node) {
-        return gameData.getMatrix().secondNeighbors(node.point.getX(), node.point.getY())
-                .filter(p -> {
-                    var middleX = Math.abs(node.point.getX() + p.getX()) / 2;
-                    var middleY = Math.abs(node.point.getY() + p.getY()) / 2;
-                    var middlePoint = gameData.getMatrix().getPoint(middleX, middleY);
-
-                    return middlePoint.isPresent() && middlePoint.get().getCell().isSafe();
-                })
-                .filter(p -> p.getCell().isSafe())
-                .map(this::getNode)
-                .toList();
+     * @param other board of the same size, must not be this board.
+     * @param dx    horizontal shift in the range [-2, 2].
+     * @param dy    vertical shift.
+     */
+    public void orShifted(BitBoard other, int dx, int dy) {
+        var shift = dy * width + dx;
+        var wordShift = Math.abs(shift) >> 6;
+        var bitShift = Math.abs(shift) & 63;
+        var mask = columnMasks[dx + MAX_SHIFT];
+
+        for (int i = 0; i < length; i++) {
+            long word;
+
+            if (shift >= 0) {
+                var s = i - wordShift;
+                word = s >= 0 ? other.word(s) << bitShift : 0;
+                if (bitShift != 0 && s - 1 >= 0) word |= other.word(s - 1) >>> (64 - bitShift);
+            } else {
+                var s = i + wordShift;
+                word = s < length ? other.word(s) >>> bitShift : 0;
+                if (bitShift != 0 && s + 1 < length) word |= other.word(s + 1) << (64 - bitShift);
+            }
+
+            setWord(i, word(i) | word & mask[i]);
+        }
     }
 
     /**
-     * Core A* algorithm. Implementation is taken from the lecture notes.
+     * Calls the action for every cell which bit differs from the bit of the given board.
+     * The pages shared by the boards are skipped, so a copy with a few edited cells
+     * is compared in the time of its edited pages.
      *
-     * @param start start node.
+     * @param other  board of the same size.
+     * @param action action for the cell indices.
      */
-    private void doRun(Node start) {
-        open.offer(start);
+    public void forEachDifference(BitBoard other, IntConsumer action) {
+        for (int page = 0; page < pages.length; page++) {
+            if (pages[page] != null && pages[page] == other.pages[page]) continue;
 
-        while (!open.isEmpty()) {
+            for (int i = page << PAGE_SHIFT, end = i + pageSize(page); i < end; i++)
+                for (var word = word(i) ^ other.word(i); word != 0; word &= word - 1)
+                    action.accept((i << 6) + Long.numberOfTrailingZeros(word));
+        }
+    }
 
-            var current = open.poll();
+    /**
+     * Returns the index of the first set bit starting from <code>from</code> inclusively.
+     *
+     * @param from start index.
+     * @return index of the first set bit, -1 if there is no such bit.
+     */
+    public int nextSetBit(int from) {
+        var i = from >>> 6;
+        if (i >= length) return -1;
+
+        var word = word(i) & (-1L << from);
+
+        while (true) {
+            if (word != 0) return (i << 6) + Long.numberOfTrailingZeros(word);
+            if (++i == length) return -1;
+            word = word(i);
+        }
+    }
+
+    /**
+     * Indicates if the board has no set bits.
+     *
+     * @return true if there are no set bits, false otherwise.
+     */
+    public boolean isEmpty() {
+        for (int i = 0; i < length; i++)
+            if (word(i) != 0) return false;
+        return true;
+    }
+
+    /**
+     * Returns the number of set bits.
+     *
+     * @return number of set bits.
+     */
+    public int cardinality() {
+        var count = 0;
+        for (int i = 0; i < length; i++)
+            count += Long.bitCount(word(i));
+        return count;
+    }
+
+    /**
+     * Marks the pages as shared with the future clones. The following writes copy the pages first,
+     * so the clones never write to this board and can be made by several threads at once.
+     */
+    public void share() {
+        shared = true;
+    }
+
+    /**
+     * Returns a copy of this board in constant time. The copy shares the pages with this board
+     * until either of them is written.
+     *
+     * @return copy of this board.
+     */
+    @Override
+    public BitBoard clone() {
+        try {
+            share();
+            var clone = (BitBoard) super.clone();
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError();
+        }
+    }
+}
+
+/**
+ * Kinds of moves (neighborhoods) of a cell. Shifts are given in the order used by
+ * the corresponding <code>Matrix</code> stream methods.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see Adjacency
+ * @see Matrix
+ */
+enum MoveKind {
+    NEIGHBORS(new int[][]{{0, 1}, {0, -1}, {1, 0}, {-1, 0}}),
+    CORNERS(new int[][]{{1, 1}, {1, -1}, {-1, 1}, {-1, -1}}),
+    SECOND_NEIGHBORS(new int[][]{{0, 2}, {0, -2}, {2, 0}, {-2, 0}}),
+    FIRST_SCENARIO(new int[][]{{0, 1}, {0, -1}, {1, 0}, {-1, 0}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}});
+
+    /**
+     * Shifts <code>{dx, dy}</code> of the moves.
+     */
+    private final int[][] shifts;
+
+    MoveKind(int[][] shifts) {
+        this.shifts = shifts;
+    }
+
+    int[][] getShifts() {
+        return shifts;
+    }
+}
+
+/**
+ * Precomputed adjacency tables of the matrix. Cells are split into border classes by the distances
+ * (capped at 2) to the edges, and each class has a flat range of index offsets for each move kind,
+ * so the tables are computed once per board size and do not depend on the number of cells.
+ * <p>
+ * Typical allocation-free iteration:
+ * <pre>
+ * var cls = adjacency.cellClass(index);
+ * for (int k = adjacency.begin(kind, cls), end = adjacency.end(kind, cls); k &lt; end; k++) {
+ *     var next = index + adjacency.offset(k);
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see MoveKind
+ * @see Matrix
+ */
+class Adjacency {
+
+    /**
+     * Adjacency tables cache for each board size.
+     */
+    private static final Map<Long, Adjacency> CACHE = new HashMap<>();
+
+    /**
+     * Number of border classes along one axis: (distance to the lower edge, distance to the upper edge),
+     * both capped at 2.
+     */
+    private static final int AXIS_CLASSES = 9;
+
+    /**
+     * Total number of border classes.
+     */
+    private static final int CLASSES = AXIS_CLASSES * AXIS_CLASSES;
+
+    /**
+     * Board width.
+     */
+    private final int width;
+
+    /**
+     * Board height.
+     */
+    private final int height;
+
+    /**
+     * Flat index offsets of all the ranges.
+     */
+    private final int[] offsets;
+
+    /**
+     * Range bounds indexed by <code>kind * CLASSES + cellClass</code>: range is
+     * <code>[ranges[i], ranges[i + 1])</code>.
+     */
+    private final int[] ranges;
+
+    private Adjacency(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        var kinds = MoveKind.values();
+        var offsetsList = new ArrayList<Integer>();
+        ranges = new int[kinds.length * CLASSES + 1];
+
+        for (var kind : kinds)
+            for (int cls = 0; cls < CLASSES; cls++) {
+                var xClass = cls / AXIS_CLASSES;
+                var yClass = cls % AXIS_CLASSES;
+
+                for (var shift : kind.getShifts())
+                    if (fits(xClass, shift[0]) && fits(yClass, shift[1]))
+                        offsetsList.add(shift[1] * width + shift[0]);
+
+                ranges[kind.ordinal() * CLASSES + cls + 1] = offsetsList.size();
+            }
+
+        offsets = offsetsList.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Returns adjacency tables for the given board size.
+     *
+     * @param width  board width.
+     * @param height board height.
+     * @return adjacency tables.
+     */
+    public static Adjacency of(int width, int height) {
+        synchronized (CACHE) {
+            return CACHE.computeIfAbsent(((long) width << 32) | height, key -> new Adjacency(width, height));
+        }
+    }
+
+    /**
+     * Indicates if the shift along an axis stays inside the board for the given axis class.
+     *
+     * @param axisClass axis class.
+     * @param shift     shift along the axis.
+     * @return true if the shift stays inside the board, false otherwise.
+     */
+    private static boolean fits(int axisClass, int shift) {
+        return shift < 0
+                ? axisClass / 3 >= -shift
+                : axisClass % 3 >= shift;
+    }
+
+    /**
+     * Returns the class of the axis coordinate.
+     *
+     * @param c    coordinate.
+     * @param size axis size.
+     * @return axis class.
+     */
+    private static int axisClass(int c, int size) {
+        return Math.min(c, 2) * 3 + Math.min(size - 1 - c, 2);
+    }
+
+    /**
+     * Returns the border class of the cell by its coordinates.
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     * @return border class.
+     */
+    public int cellClass(int x, int y) {
+        return axisClass(x, width) * AXIS_CLASSES + axisClass(y, height);
+    }
+
+    /**
+     * Returns the border class of the cell by its index.
+     *
+     * @param index cell index.
+     * @return border class.
+     */
+    public int cellClass(int index) {
+        return cellClass(index % width, index / width);
+    }
+
+    /**
+     * Returns the beginning (inclusive) of the offsets range.
+     *
+     * @param kind move kind.
+     * @param cls  border class.
+     * @return beginning of the range.
+     */
+    public int begin(MoveKind kind, int cls) {
+        return ranges[kind.ordinal() * CLASSES + cls];
+    }
+
+    /**
+     * Returns the end (exclusive) of the offsets range.
+     *
+     * @param kind move kind.
+     * @param cls  border class.
+     * @return end of the range.
+     */
+    public int end(MoveKind kind, int cls) {
+        return ranges[kind.ordinal() * CLASSES + cls + 1];
+    }
+
+    /**
+     * Returns the index offset by its position in the tables.
+     *
+     * @param k position in the range.
+     * @return index offset.
+     */
+    public int offset(int k) {
+        return offsets[k];
+    }
+
+    /**
+     * Performs the action for each move of the given kind from the cell.
+     *
+     * @param kind   move kind.
+     * @param index  cell index.
+     * @param action action accepting the index of the move.
+     */
+    public void forEach(MoveKind kind, int index, IntConsumer action) {
+        var cls = cellClass(index);
+        for (int k = begin(kind, cls), end = end(kind, cls); k < end; k++)
+            action.accept(index + offsets[k]);
+    }
+}
+
+/**
+ * Sea map generator class. The map (cells and entities) is never written after the generation,
+ * <code>tryRemoveKraken</code> replaces it with a changed copy, so one instance can be read
+ * by several searches at once without locking. The path is a separate overlay of the map,
+ * it is changed by <code>setPath</code> and <code>unsetPath</code>.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see Backtracking
+ * @see AStar
+ */
+class GameData implements Cloneable {
+
+    /**
+     * Random numbers generator.
+     */
+    private static final Random RANDOM = new Random();
+
+    /**
+     * Maximum number of the random points tried for an entity of a random map.
+     */
+    private static final int MAX_SPAWN_ATTEMPTS = 1 << 12;
+
+    /**
+     * Pseudo cell code of Jack Sparrow for the Zobrist keys.
+     */
+    private static final byte JACK_SPARROW_CODE = 8;
+
+    /**
+     * Points matrix. Shared by the clones, never written after the generation.
+     */
+    private Matrix matrix;
+
+    /**
+     * Path overlay of the matrix.
+     */
+    private BitBoard path;
+
+    /**
+     * Zobrist hash of the map: the size, Jack Sparrow, and the codes of the entity cells.
+     * The air cells (perception zones) follow from the enemies and are not hashed.
+     */
+    private long hash;
+
+    /**
+     * Jack Sparrow (Main hero) initial spawn coordinates.
+     */
+    private Point jackSparrow;
+
+    /**
+     * Davy Jones (Enemy) initial spawn coordinates.
+     */
+    private Point davyJones;
+
+    /**
+     * Kraken (Removable Enemy) initial spawn coordinates.
+     */
+    private Point kraken;
+
+    /**
+     * Rock (Enemy) initial spawn coordinates.
+     */
+    private Point rock;
+
+    /**
+     * Chest (Exit) initial spawn coordinates.
+     */
+    private Point chest;
+
+    /**
+     * Tortuga (Island, grants ability to kill kraken after visiting) initial spawn coordinates.
+     */
+    private Point tortuga;
+
+    /**
+     * Indices of the entity cells (except Jack Sparrow) in the order of their first spawn.
+     * Replaced by a spawn, so the clones do not share the changes.
+     */
+    private int[] entityCells = new int[0];
+
+    /**
+     * Tries to spawn a cell by the given index with respect to the spawn rules.
+     *
+     * @param code  spawned cell code.
+     * @param index cell index.
+     * @return true if the spawn result is success, false otherwise.
+     * @see CellCodes#SPAWN
+     */
+    private boolean trySpawn(byte code, int index) {
+        var previous = matrix.getCode(index);
+        var result = CellCodes.SPAWN[code][previous];
+        if (result == CellCodes.NONE) return false;
+
+        matrix.setCode(index, result);
+        hash ^= zobrist(index, previous) ^ zobrist(index, result);
+
+        for (var cell : entityCells)
+            if (cell == index) return true;
+
+        entityCells = Arrays.copyOf(entityCells, entityCells.length + 1);
+        entityCells[entityCells.length - 1] = index;
+        return true;
+    }
+
+    /**
+     * Returns the Zobrist key of the cell code by the given index. The keys are generated
+     * by the SplitMix64 finalizer instead of the random tables, so they take no memory
+     * and the hashes are the same in all the processes.
+     *
+     * @param index cell index.
+     * @param code  cell code or <code>JACK_SPARROW_CODE</code>.
+     * @return Zobrist key, 0 for the air cells.
+     */
+    private static long zobrist(int index, byte code) {
+        if (code < CellCodes.AIR.length && CellCodes.AIR[code]) return 0;
+        return mix(((long) index << 4 | code) + 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     *
+     * @param z value.
+     * @return mixed value.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Tries to spawn a cell by the given coordinates with respect to the spawn rules.
+     *
+     * @param code spawned cell code.
+     * @param x    x-coordinate.
+     * @param y    y-coordinate.
+     * @return true if the spawn result is success, false otherwise.
+     * @see CellCodes#SPAWN
+     */
+    private boolean trySpawn(byte code, int x, int y) {
+        return matrix.contains(x, y) && trySpawn(code, matrix.index(x, y));
+    }
+
+    /**
+     * Returns the air cell code with respect to the number of the enemies perceiving the cell.
+     *
+     * @param count number of the enemies.
+     * @return air cell code.
+     */
+    private static byte air(int count) {
+        return count > 0 ? CellCodes.PERCEPTION : CellCodes.FREE;
+    }
+
+    /**
+     * Adds (<code>delta = 1</code>) or removes (<code>delta = -1</code>) the perception zone of an enemy
+     * around the given cell. Only the perception numbers of the zone are changed, the air cells
+     * become perception cells while their number is positive. The zone is the precomputed
+     * adjacency template of the cell.
+     *
+     * @param kind  neighborhood of the cell.
+     * @param index cell index.
+     * @param delta perception number change.
+     * @see Adjacency
+     */
+    private void perceive(MoveKind kind, int index, int delta) {
+        var adjacency = matrix.getAdjacency();
+        var cls = adjacency.cellClass(index);
+
+        for (int k = adjacency.begin(kind, cls), end = adjacency.end(kind, cls); k < end; k++) {
+            var next = index + adjacency.offset(k);
+            var count = matrix.getPerception(next) + delta;
+
+            matrix.setPerception(next, count);
+            if (CellCodes.AIR[matrix.getCode(next)]) matrix.setCode(next, air(count));
+        }
+    }
+
+    /**
+     * Tries to spawn Jack Sparrow by the given coordinates.
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     * @return true if the spawn result is success, false otherwise.
+     */
+    private boolean trySetJackSparrow(int x, int y) {
+        if (matrix.contains(x, y) && CellCodes.JACK_SPAWNABLE[matrix.getCode(matrix.index(x, y))]) {
+            if (jackSparrow != null) hash ^= zobrist(matrix.index(jackSparrow), JACK_SPARROW_CODE);
+            jackSparrow = new Point(x, y);
+            hash ^= zobrist(matrix.index(x, y), JACK_SPARROW_CODE);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Tries to spawn Davy Jones by the given coordinates.
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     * @return true if the spawn result is success, false otherwise.
+     */
+    private boolean trySetDavyJones(int x, int y) {
+        if (!matrix.contains(x, y)) return false;
+
+        var index = matrix.index(x, y);
+        var respawn = matrix.getCode(index) == CellCodes.DAVY_JONES;
+        if (!trySpawn(CellCodes.DAVY_JONES, index)) return false;
+
+        // Davy Jones by the same coordinates already perceives his zone
+        if (!respawn) perceive(MoveKind.FIRST_SCENARIO, index, 1);
+        davyJones = new Point(x, y);
+
+        return true;
+    }
+
+    /**
+     * Tries to spawn Davy Jones by the given coordinates.
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     * @return true if the spawn result is success, false otherwise.
+     */
+    public boolean trySetKraken(int x, int y) {
+        if (!matrix.contains(x, y)) return false;
+
+        var index = matrix.index(x, y);
+        var code = matrix.getCode(index);
+        var respawn = code == CellCodes.KRAKEN || code == CellCodes.KRAKEN_ROCK;
+        if (!trySpawn(CellCodes.KRAKEN, index)) return false;
+
+        // Kraken by the same coordinates already perceives its zone
+        if (!respawn) perceive(MoveKind.NEIGHBORS, index, 1);
+        kraken = new Point(x, y);
+
+        return true;
+    }
+
+    /**
+     * Tries to remove Kraken from the map. The map is replaced with a changed copy, so the game data
+     * sharing the old map is not affected. Only Kraken's cell and its perception zone are changed,
+     * the cells perceived by other enemies stay perception cells.
+     * Ignores unsuccessful tries (i.e. Kraken is already removed / not spawned).
+     */
+    public void tryRemoveKraken() {
+        if (kraken == null) return;
+
+        var index = matrix.index(kraken);
+        var code = matrix.getCode(index);
+        if (code != CellCodes.KRAKEN && code != CellCodes.KRAKEN_ROCK) return;
+
+        // The matrix may be shared with other game data, the clone copies only the changed pages
+        matrix = matrix.clone();
+        var result = code == CellCodes.KRAKEN_ROCK ? CellCodes.ROCK : air(matrix.getPerception(index));
+        matrix.setCode(index, result);
+        hash ^= zobrist(index, code) ^ zobrist(index, result);
+        perceive(MoveKind.NEIGHBORS, index, -1);
+
+        matrix.share();
+    }
+
+    /**
+     * Tries to spawn Rock by the given coordinates.
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     * @return true if the spawn result is success, false otherwise.
+     */
+    private boolean trySetRock(int x, int y) {
+        if (!trySpawn(CellCodes.ROCK, x, y)) return false;
+
+        rock = new Point(x, y);
+        return true;
+    }
+
+    /**
+     * Tries to spawn chest by the given coordinates.
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     * @return true if the spawn result is success, false otherwise.
+     */
+    private boolean trySetChest(int x, int y) {
+        if (!trySpawn(CellCodes.CHEST, x, y)) return false;
+
+        chest = new Point(x, y);
+        return true;
+    }
+
+    /**
+     * Tries to spawn Tortuga by the given coordinates.
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     * @return true if the spawn result is success, false otherwise.
+     */
+    private boolean trySetTortuga(int x, int y) {
+        if (!trySpawn(CellCodes.TORTUGA, x, y)) return false;
+
+        tortuga = new Point(x, y);
+        return true;
+    }
+
+    /**
+     * Tries to mark the point as "included to the path" by the given coordinates.
+     * Ignores unsuccessful tries
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     */
+    public void setPath(int x, int y) {
+        if (matrix.contains(x, y)) path.set(matrix.index(x, y));
+    }
+
+    /**
+     * Tries to mark the point as "NOT included to the path" by the given coordinates.
+     * Ignores unsuccessful tries
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     */
+    public void unsetPath(int x, int y) {
+        if (matrix.contains(x, y)) path.clear(matrix.index(x, y));
+    }
+
+    /**
+     * Indicates if the point by the given coordinates is included to the path.
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     * @return true if the point is included to the path, false otherwise.
+     */
+    public boolean isPath(int x, int y) {
+        return matrix.contains(x, y) && path.get(matrix.index(x, y));
+    }
+
+    /**
+     * Generates a random point inside the matrix.
+     *
+     * @return random point inside the matrix.
+     */
+    private Point getRandomPoint() {
+        while (true) {
+            var optPos = matrix.getPoint(RANDOM.nextInt(0, matrix.getWidth()), RANDOM.nextInt(0, matrix.getHeight()));
+            if (optPos.isPresent() && (optPos.get().getX() != 0 || optPos.get().getY() == 0))
+                return optPos.get();
+        }
+    }
+
+    /**
+     * Spawns the entity at a random point, trying at most <code>MAX_SPAWN_ATTEMPTS</code> points.
+     *
+     * @param trySet entity setter by the coordinates.
+     * @throws IllegalArgumentException if the entity can't be spawned (e.g. the map is too small).
+     */
+    private void spawnRandomly(BiPredicate<Integer, Integer> trySet) {
+        for (int i = 0; i < MAX_SPAWN_ATTEMPTS; i++) {
+            var point = getRandomPoint();
+            if (trySet.test(point.getX(), point.getY())) return;
+        }
+
+        throw new IllegalArgumentException("Failed to spawn game entities!");
+    }
+
+    /**
+     * Generates a 9x9 sea map with respect to the given points.
+     *
+     * @param points Parsed coordinates from the input.
+     * @throws IllegalArgumentException if any point is incorrect with respect to the game rules.
+     */
+    public GameData(List<Point> points) {
+        this(points, Matrix.DEFAULT_SIZE, Matrix.DEFAULT_SIZE);
+    }
+
+    /**
+     * Generates a sea map of the given size with respect to the given points.
+     *
+     * @param points Parsed coordinates from the input.
+     * @param width  map width.
+     * @param height map height.
+     * @throws IllegalArgumentException if any point is incorrect with respect to the game rules.
+     */
+    public GameData(List<Point> points, int width, int height) {
+        matrix = new Matrix(width, height);
+        path = new BitBoard(width, height);
+        hash = mix((long) width << 32 | height);
+
+        var generationResult = Stream.of(
+                trySetDavyJones(points.get(1).getX(), points.get(1).getY()),
+                trySetKraken(points.get(2).getX(), points.get(2).getY()),
+                trySetRock(points.get(3).getX(), points.get(3).getY()),
+                trySetChest(points.get(4).getX(), points.get(4).getY()),
+                trySetTortuga(points.get(5).getX(), points.get(5).getY()),
+                trySetJackSparrow(points.get(0).getX(), points.get(0).getY())
+        ).allMatch(x -> x);
+
+        if (!generationResult)
+            throw new IllegalArgumentException("Failed to spawn game entities!");
+
+        matrix.share();
+    }
+
+    /**
+     * Generates a 9x9 sea map with random valid coordinates. Jack Sparrow is always spawned
+     * at (0, 0) point.
+     */
+    public GameData() {
+        this(Matrix.DEFAULT_SIZE, Matrix.DEFAULT_SIZE);
+    }
+
+    /**
+     * Generates a sea map of the given size with random valid coordinates. Jack Sparrow is always spawned
+     * at (0, 0) point. The small maps (e.g. 1x1 or 1xN) can't hold all the entities, and the generation
+     * of a random map may fail on the tight ones (e.g. 3x3).
+     *
+     * @param width  map width.
+     * @param height map height.
+     * @throws IllegalArgumentException if the entities can't be spawned.
+     */
+    public GameData(int width, int height) {
+        matrix = new Matrix(width, height);
+        path = new BitBoard(width, height);
+        hash = mix((long) width << 32 | height);
+
+        var optPoint = matrix.getPoint(0, 0);
+
+        optPoint.ifPresent(point -> trySetJackSparrow(point.getX(), point.getY()));
+
+        spawnRandomly(this::trySetDavyJones);
+        spawnRandomly(this::trySetKraken);
+        spawnRandomly(this::trySetRock);
+        spawnRandomly(this::trySetChest);
+        spawnRandomly(this::trySetTortuga);
+
+        matrix.share();
+    }
+
+    public Matrix getMatrix() {
+        return matrix;
+    }
+
+    public BitBoard getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the Zobrist hash of the map. It is updated incrementally by the spawns
+     * and by <code>tryRemoveKraken</code>, the equal maps have equal hashes. The path overlay is not hashed.
+     *
+     * @return hash of the map.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the cells the hash of the map is computed from: the size, Jack Sparrow's cell, and the index
+     * and the current code of each entity cell. Different maps never have equal cells, so they tell apart
+     * the maps with colliding hashes.
+     *
+     * @return width, height, Jack Sparrow's cell index, and the index and the code of each entity cell.
+     */
+    public int[] getEntityCells() {
+        var cells = new int[3 + 2 * entityCells.length];
+        cells[0] = matrix.getWidth();
+        cells[1] = matrix.getHeight();
+        cells[2] = matrix.index(jackSparrow);
+
+        for (int i = 0; i < entityCells.length; i++) {
+            cells[3 + 2 * i] = entityCells[i];
+            cells[4 + 2 * i] = matrix.getCode(entityCells[i]);
+        }
+
+        return cells;
+    }
+
+    /**
+     * Initialization over the already filled matrix (e.g. a memory-mapped one).
+     *
+     * @param matrix      points matrix.
+     * @param jackSparrow Jack Sparrow coordinates.
+     * @param davyJones   Davy Jones coordinates.
+     * @param kraken      Kraken coordinates.
+     * @param rock        Rock coordinates.
+     * @param chest       chest coordinates.
+     * @param tortuga     Tortuga coordinates.
+     * @see MapFile
+     */
+    GameData(Matrix matrix, Point jackSparrow, Point davyJones, Point kraken, Point rock, Point chest, Point tortuga) {
+        this.matrix = matrix;
+        this.path = new BitBoard(matrix.getWidth(), matrix.getHeight());
+        this.jackSparrow = jackSparrow;
+        this.davyJones = davyJones;
+        this.kraken = kraken;
+        this.rock = rock;
+        this.chest = chest;
+        this.tortuga = tortuga;
+
+        // Only the entity cells are hashed, so the cells of the map are not read
+        entityCells = Stream.of(davyJones, kraken, rock, chest, tortuga)
+                .filter(Objects::nonNull)
+                .mapToInt(matrix::index)
+                .distinct()
+                .toArray();
+
+        hash = mix((long) matrix.getWidth() << 32 | matrix.getHeight())
+                ^ zobrist(matrix.index(jackSparrow), JACK_SPARROW_CODE);
+        for (var index : entityCells)
+            hash ^= zobrist(index, matrix.getCode(index));
+
+        matrix.share();
+    }
+
+    public Point getJackSparrow() {
+        return jackSparrow;
+    }
+
+    public Point getDavyJones() {
+        return davyJones;
+    }
+
+    public Point getKraken() {
+        return kraken;
+    }
+
+    public Point getRock() {
+        return rock;
+    }
+
+    public Point getChest() {
+        return chest;
+    }
+
+    public Point getTortuga() {
+        return tortuga;
+    }
+
+    /**
+     * Returns the game data over the same map with the given path overlay.
+     *
+     * @param path path overlay of the map size.
+     * @return game data with the given path.
+     */
+    public GameData withPath(BitBoard path) {
+        try {
+            var data = (GameData) super.clone();
+            data.path = path;
+            return data;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return matrix.toString(path);
+    }
+
+    /**
+     * Returns a copy of the game data in constant time. The copy shares the map and the path with
+     * this game data and copies only the pages changed by <code>setPath</code> and <code>unsetPath</code>.
+     *
+     * @return copy of the game data.
+     */
+    @Override
+    public GameData clone() {
+        return withPath(path.clone());
+    }
+}
+
+/**
+ * Stores the most successful (during the algorithm execution, not always)
+ * result of algorithm's run from start to target. Nullable.
+ * <p>
+ * The path is packed to the cell indices, the game data is a reference to the (immutable) map of the run,
+ * so a snapshot takes tens of bytes. The path grid is rendered only by <code>toString</code>.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see Backtracking
+ * @see AStar
+ * @see OutputHelper
+ */
+class Snapshot {
+
+    /**
+     * Start cell index of the run (-1 for none). It is rendered as a part of the path,
+     * but it is included to the steps only by the algorithms which count it.
+     */
+    private final int start;
+
+    /**
+     * Cell indices of the shortest path from start to target.
+     */
+    private final int[] path;
+
+    /**
+     * Game data of the run (not a copy).
+     */
+    private final GameData gameData;
+
+    /**
+     * Indicates if the snapshot is the result of a complete search, i.e. it is as good as the engine
+     * finds without a budget (optimal for the optimal engines). False for the best-effort results
+     * of the runs interrupted by their budget.
+     */
+    private final boolean optimal;
+
+    public Snapshot(int start, int[] path, GameData gameData) {
+        this(start, path, gameData, true);
+    }
+
+    public Snapshot(int start, int[] path, GameData gameData, boolean optimal) {
+        this.start = start;
+        this.path = path;
+        this.gameData = gameData;
+        this.optimal = optimal;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int[] getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the number of the steps.
+     *
+     * @return number of the steps.
+     */
+    public int length() {
+        return path.length;
+    }
+
+    /**
+     * Unpacks the shortest path points from start to target.
+     *
+     * @return shortest path points.
+     */
+    public List<Point> getSteps() {
+        var matrix = gameData.getMatrix();
+        var steps = new ArrayList<Point>(path.length);
+
+        for (var index : path)
+            steps.add(matrix.point(index));
+
+        return steps;
+    }
+
+    public GameData getGameData() {
+        return gameData;
+    }
+
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    @Override
+    public String toString() {
+        var matrix = gameData.getMatrix();
+        var pathLayer = new BitBoard(matrix.getWidth(), matrix.getHeight());
+
+        if (start != -1) pathLayer.set(start);
+        for (var index : path)
+            pathLayer.set(index);
+
+        var shortestPathString = getSteps().stream()
+                .map(Point::toString)
+                .collect(Collectors.joining(" "));
+
+        return String.format("%d\n%s\n%s", path.length, shortestPathString, matrix.toString(pathLayer));
+    }
+}
+
+/**
+ * Bounded cache of the solutions of the repeated maps with the least recently used eviction.
+ * A solution is keyed by the Zobrist hash of the map, the scenario, the engine, and the start and target
+ * cells of the leg (-1 for the whole route of <code>SearchingAlgorithm.run()</code>).
+ * The entity cells of the map are stored with the solution and compared on a hit, so a different map
+ * with the colliding hash is a miss and replaces the solution.
+ * Only the results of the complete (not interrupted) runs are stored, including the absent ones.
+ * <p>
+ * Thread-safe: a lookup reorders the entries, so the lookups and the insertions are synchronized,
+ * but the solutions are computed outside the lock. The engines may share one cache.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see GameData#getHash()
+ * @see GameData#getEntityCells()
+ * @see SearchingAlgorithm
+ */
+class SolutionCache {
+
+    /**
+     * Key of a solution.
+     *
+     * @param hash     Zobrist hash of the map.
+     * @param scenario game scenario.
+     * @param engine   class of the engine.
+     * @param start    start cell index (-1 for the whole route).
+     * @param target   target cell index (-1 for the whole route).
+     */
+    private record Key(long hash, int scenario, Class<?> engine, int start, int target) {
+    }
+
+    /**
+     * Stored solution.
+     *
+     * @param cells    entity cells of the map.
+     * @param solution solution (null if there is no solution).
+     */
+    private record Entry(int[] cells, Snapshot solution) {
+    }
+
+    /**
+     * Solutions in the access order (the eldest is the least recently used).
+     */
+    private final LinkedHashMap<Key, Entry> entries;
+
+    /**
+     * Number of the found solutions.
+     */
+    private long hits;
+
+    /**
+     * Number of the computed solutions.
+     */
+    private long misses;
+
+    /**
+     * Number of the evicted solutions.
+     */
+    private long evictions;
+
+    /**
+     * @param capacity maximum number of the stored solutions.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public SolutionCache(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Cache capacity must be positive");
+
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= capacity) return false;
+
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the stored solution of the leg, or computes it by the engine and stores it
+     * if the engine is not interrupted.
+     *
+     * @param engine engine of the leg.
+     * @param data   game data of the leg.
+     * @param start  start cell index (-1 for the whole route).
+     * @param target target cell index (-1 for the whole route).
+     * @param solver computes the solution by the engine.
+     * @return solution (nullable).
+     */
+    public Snapshot get(SearchingAlgorithm engine, GameData data, int start, int target, Supplier<Snapshot> solver) {
+        var key = new Key(data.getHash(), engine.scenario, engine.getClass(), start, target);
+        var cells = data.getEntityCells();
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && !Arrays.equals(entry.cells(), cells)) entry = null;
+
+            if (entry == null) misses++;
+            else hits++;
+        }
+
+        if (entry != null) return entry.solution();
+
+        var solution = solver.get();
+
+        // The results of the interrupted runs are only best-effort
+        if (!engine.isInterrupted())
+            synchronized (entries) {
+                entries.put(key, new Entry(cells, solution));
+            }
+
+        return solution;
+    }
+
+    public long getHits() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    public long getMisses() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    public long getEvictions() {
+        synchronized (entries) {
+            return evictions;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (entries) {
+            return String.format("hits: %d, misses: %d, evictions: %d, size: %d", hits, misses, evictions,
+                    entries.size());
+        }
+    }
+}
+
+/**
+ * Common logic for searching algorithms with respect to game rules.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see Backtracking
+ * @see AStar
+ * @see TestHelper
+ */
+abstract class SearchingAlgorithm {
+    /**
+     * Current game data during the execution of a partial run from start to target.
+     */
+    protected GameData gameData;
+
+    /**
+     * Game scenario
+     */
+    protected final int scenario;
+
+    /**
+     * Stores the current snapshot during the execution of a partial run from start to target.
+     */
+    protected Snapshot currentSnapshot;
+
+    /**
+     * Target point (Tortuga + Kraken + Chest run or just Chest run)
+     */
+    protected Point target;
+
+    /**
+     * Stores the minimum steps count over a run from start to target.
+     */
+    protected int minStepsCount = Integer.MAX_VALUE;
+
+    /**
+     * Number of the nodes expanded over all the runs.
+     */
+    protected long expansions;
+
+    /**
+     * Indicates if the independent legs of the run are performed in parallel.
+     */
+    private boolean parallel;
+
+    /**
+     * Cache of the solutions of the run and its legs (null for none).
+     */
+    private SolutionCache cache;
+
+    /**
+     * Value of <code>System.nanoTime()</code> when the budget was set.
+     */
+    private long budgetStartNanos;
+
+    /**
+     * Wall-clock time limit of the runs since <code>budgetStartNanos</code> (Long.MAX_VALUE for none).
+     */
+    private long timeLimitNanos = Long.MAX_VALUE;
+
+    /**
+     * Expansions count at which the runs are interrupted (Long.MAX_VALUE for none).
+     */
+    private long expansionLimit = Long.MAX_VALUE;
+
+    /**
+     * Number of the budget checks until the next clock reading.
+     */
+    private int clockCountdown;
+
+    /**
+     * Indicates if the budget is exhausted. The runs are interrupted, and their results are only best-effort.
+     */
+    private boolean interrupted;
+
+    /**
+     * Engines of the legs of the parallel runs, one per thread. They are reused by all the runs,
+     * so a run does not allocate the buffers of the engines.
+     */
+    private final ThreadLocal<SearchingAlgorithm> legEngines = ThreadLocal.withInitial(this::copy);
+
+    /**
+     * Writes safe moves of the given kind from the cell to <code>out</code>
+     * in the order of the corresponding <code>Matrix</code> stream method.
+     *
+     * @param kind  move kind.
+     * @param index cell index.
+     * @param out   moves buffer for cell indices.
+     * @return number of the moves.
+     * @see Adjacency
+     */
+    protected int safeMoves(MoveKind kind, int index, int[] out) {
+        var matrix = gameData.getMatrix();
+        var adjacency = matrix.getAdjacency();
+        var cls = adjacency.cellClass(index);
+        var count = 0;
+
+        for (int k = adjacency.begin(kind, cls), end = adjacency.end(kind, cls); k < end; k++) {
+            var next = index + adjacency.offset(k);
+            if (matrix.isSafe(next)) out[count++] = next;
+        }
+
+        return count;
+    }
+
+    /**
+     * Performs runs from Tortuga to Kraken's weak points (corners).
+     * Returns a list of these runs sorted by path length.
+     *
+     * @param tortugaGameData game map with already executed run spawn->tortuga.
+     * @return list of runs tortuga->kraken_weak_point sorted by run's path in ascending order.
+     */
+    private List<Snapshot> krakenCornersRuns(GameData tortugaGameData) {
+        return gameData.getMatrix().corners(gameData.getKraken().getX(), gameData.getKraken().getY())
+                .map(p -> legRun(gameData.getTortuga(), p, tortugaGameData.clone()))
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingInt(Snapshot::length))
+                .toList();
+    }
+
+    public long getExpansions() {
+        return expansions;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    public SolutionCache getCache() {
+        return cache;
+    }
+
+    public void setCache(SolutionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Limits all the following runs of the engine by the wall-clock deadline and/or the number
+     * of the expanded nodes. When the budget is exhausted, the runs return the best snapshots found so far
+     * (not flagged as optimal), or null if they found nothing. Backtracking, A*, bidirectional A*,
+     * and IDA* check the budget; the other engines take polynomial time and ignore it.
+     * In a parallel run every leg gets the rest of the expansion budget when it starts.
+     *
+     * @param deadline        wall-clock deadline (null for none).
+     * @param expansionBudget number of the nodes to expand (Long.MAX_VALUE for none).
+     */
+    public void setBudget(Instant deadline, long expansionBudget) {
+        budgetStartNanos = System.nanoTime();
+        clockCountdown = 0;
+        interrupted = false;
+
+        if (deadline == null) timeLimitNanos = Long.MAX_VALUE;
+        else {
+            var remaining = Duration.between(Instant.now(), deadline);
+            timeLimitNanos = remaining.isNegative() ? 0
+                    : remaining.getSeconds() >= Long.MAX_VALUE / 1_000_000_000L ? Long.MAX_VALUE
+                    : remaining.toNanos();
+        }
+
+        expansionLimit = expansionBudget >= Long.MAX_VALUE - expansions
+                ? Long.MAX_VALUE
+                : expansions + Math.max(0, expansionBudget);
+    }
+
+    /**
+     * Indicates if the budget is exhausted. Cheap enough for the inner loops:
+     * the clock is read on the first check and then once per 1024 checks.
+     *
+     * @return true if the run must be interrupted, false otherwise.
+     */
+    protected boolean isExhausted() {
+        if (interrupted) return true;
+        if (expansions >= expansionLimit) return interrupted = true;
+
+        if (--clockCountdown < 0) {
+            clockCountdown = 1023;
+            interrupted = System.nanoTime() - budgetStartNanos >= timeLimitNanos;
+        }
+
+        return interrupted;
+    }
+
+    /**
+     * Passes the rest of the budget to the engine which performs a part of the work of this one.
+     *
+     * @param engine helper engine.
+     */
+    protected void shareBudget(SearchingAlgorithm engine) {
+        engine.budgetStartNanos = budgetStartNanos;
+        engine.timeLimitNanos = timeLimitNanos;
+        engine.clockCountdown = 0;
+        engine.interrupted = interrupted;
+        engine.expansionLimit = expansionLimit == Long.MAX_VALUE
+                ? Long.MAX_VALUE
+                : engine.expansions + Math.max(0, expansionLimit - expansions);
+    }
+
+    /**
+     * Takes the expansions and the interruption of the helper engine into account.
+     *
+     * @param engine             helper engine.
+     * @param previousExpansions expansions of the helper engine before it took the budget.
+     */
+    protected void joinBudget(SearchingAlgorithm engine, long previousExpansions) {
+        expansions += engine.expansions - previousExpansions;
+        interrupted |= engine.interrupted;
+    }
+
+    /**
+     * Returns a new engine of the same kind over the same game data. The legs of a parallel run
+     * are performed by such engines (one per thread), since the state of an engine is not shared between threads.
+     *
+     * @return new engine.
+     */
+    protected abstract SearchingAlgorithm copy();
+
+    /**
+     * Indicates if the point is dangerous.
+     *
+     * @param point current point.
+     * @return true if the point is dangerous, false otherwise.
+     */
+    protected boolean isLosing(Point point) {
+        var matrix = gameData.getMatrix();
+        return !matrix.isSafe(matrix.index(point.getX(), point.getY()));
+    }
+
+    /**
+     * Takes the snapshot with the custom data.
+     *
+     * @param start    start cell index (-1 for none).
+     * @param path     custom path cell indices.
+     * @param gameData custom game data.
+     */
+    protected void takeSnapshot(int start, int[] path, GameData gameData) {
+        currentSnapshot = new Snapshot(start, path, gameData, !interrupted);
+    }
+
+    public SearchingAlgorithm(GameData gameData, int scenario) {
+        this.gameData = gameData;
+        this.scenario = scenario;
+    }
+
+    /**
+     * Performs run from defined <code>start</code> and <code>target</code> points.
+     *
+     * @param start    start point, not included to the path.
+     * @param target   target point, included to the path.
+     * @param gameData game data.
+     * @return resulting snapshot of the run (nullable).
+     */
+    public abstract Snapshot partialRun(Point start, Point target, GameData gameData);
+
+    /**
+     * Preforms 2 complete runs and chooses the best one.
+     * <ol>
+     *     <li>start->tortuga + tortuga->best_kraken + kraken->chest</li>
+     *     <li>start->chest without tortuga</li>
+     * </ol>
+     * <p>
+     * Best_kraken run is the best run from Tortuga to the one of Kraken's corners.
+     */
+    public Snapshot run() {
+        return cache == null ? routeRun() : cache.get(this, gameData, -1, -1, this::routeRun);
+    }
+
+    /**
+     * Performs the run over another map of the same size. The engine keeps its buffers,
+     * so one engine solves a series of maps without the allocations.
+     *
+     * @param data game data of the map.
+     * @return the best snapshot of the run.
+     * @throws IllegalArgumentException if the map size differs from the size of the engine map.
+     */
+    public Snapshot run(GameData data) {
+        var matrix = gameData.getMatrix();
+        var other = data.getMatrix();
+
+        if (matrix.getWidth() != other.getWidth() || matrix.getHeight() != other.getHeight())
+            throw new IllegalArgumentException("The map size differs from the size of the engine");
+
+        gameData = data;
+        return run();
+    }
+
+    /**
+     * Performs the run sequentially or in parallel, and clears the optimal flag of the result
+     * if the budget is exhausted.
+     *
+     * @return the best snapshot of the run.
+     */
+    private Snapshot routeRun() {
+        var result = parallel ? parallelRun() : sequentialRun();
+
+        // An interrupted leg may change the choice of the route
+        return result == null || !interrupted
+                ? result
+                : new Snapshot(result.getStart(), result.getPath(), result.getGameData(), false);
+    }
+
+    /**
+     * Performs the legs of the run one by one.
+     *
+     * @return the best snapshot of the run.
+     */
+    private Snapshot sequentialRun() {
+        var initialGameData = gameData.clone();
+
+        var tortugaRun = legRun(gameData.getJackSparrow(), gameData.getTortuga(), initialGameData.clone());
+        var combinedRun = tortugaRun == null
+                ? null
+                : combinedRun(tortugaRun, krakenCornersRuns(tortugaRun.getGameData().clone()));
+
+        var immediateRun = legRun(gameData.getJackSparrow(), gameData.getChest(), initialGameData);
+
+        return shortestRun(combinedRun, immediateRun);
+    }
+
+    /**
+     * Performs the run with the independent legs in parallel: spawn->chest, spawn->tortuga
+     * and tortuga->kraken_weak_point runs are performed at the same time by the per-thread copies of the engine
+     * in the common fork-join pool. Then the route through Kraken is completed by this engine.
+     * The result is the same as the result of the sequential run.
+     *
+     * @return the best snapshot of the run.
+     */
+    private Snapshot parallelRun() {
+        var initialGameData = gameData.clone();
+        var kraken = gameData.getKraken();
+        var corners = gameData.getMatrix().corners(kraken.getX(), kraken.getY()).toList();
+
+        var legs = new ArrayList<ForkJoinTask<Snapshot>>();
+
+        // Every leg gets its own game data
+        var jackSparrow = gameData.getJackSparrow();
+        var tortuga = gameData.getTortuga();
+        legs.add(leg(jackSparrow, gameData.getChest(), initialGameData.clone()));
+        legs.add(leg(jackSparrow, tortuga, initialGameData.clone()));
+        for (var corner : corners)
+            legs.add(leg(tortuga, corner, initialGameData.clone()));
+
+        ForkJoinTask.invokeAll(legs);
+
+        var immediateRun = legs.get(0).join();
+        var tortugaRun = legs.get(1).join();
+
+        var krakenRuns = legs.subList(2, legs.size()).stream()
+                .map(ForkJoinTask::join)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingInt(Snapshot::length))
+                .toList();
+
+        return shortestRun(tortugaRun == null ? null : combinedRun(tortugaRun, krakenRuns), immediateRun);
+    }
+
+    /**
+     * Returns the task of the leg performed by the copy of the engine of the executing thread.
+     * The budget of the leg is shared and joined under the lock of this engine.
+     *
+     * @param start  start point.
+     * @param target target point.
+     * @param data   game data for the leg.
+     * @return task of the leg.
+     */
+    private ForkJoinTask<Snapshot> leg(Point start, Point target, GameData data) {
+        return ForkJoinTask.adapt(() -> {
+            var engine = legEngines.get();
+            engine.gameData = gameData;
+            engine.cache = cache;
+
+            long previousExpansions;
+            synchronized (this) {
+                previousExpansions = engine.expansions;
+                shareBudget(engine);
+            }
+
+            var result = engine.legRun(start, target, data);
+
+            synchronized (this) {
+                joinBudget(engine, previousExpansions);
+            }
+
+            return result;
+        });
+    }
+
+    /**
+     * Performs the leg of the run, or takes its solution from the cache.
+     *
+     * @param start  start point.
+     * @param target target point.
+     * @param data   game data for the leg.
+     * @return resulting snapshot of the leg (nullable).
+     */
+    private Snapshot legRun(Point start, Point target, GameData data) {
+        if (cache == null) return partialRun(start, target, data);
+
+        var matrix = data.getMatrix();
+        return cache.get(this, data, matrix.index(start), matrix.index(target), () -> partialRun(start, target, data));
+    }
+
+    /**
+     * Completes the route through Kraken: runs from the nearest Kraken's weak point to the chest
+     * on the map without Kraken, and joins the paths of the legs.
+     *
+     * @param tortugaRun run spawn->tortuga.
+     * @param krakenRuns runs tortuga->kraken_weak_point sorted by run's path in ascending order.
+     * @return snapshot of the route, null if there is no route.
+     */
+    private Snapshot combinedRun(Snapshot tortugaRun, List<Snapshot> krakenRuns) {
+        var finalKrakenRun = krakenRuns.isEmpty() ? null : krakenRuns.get(0);
+        if (finalKrakenRun == null || finalKrakenRun.length() == 0) return null;
+
+        var krakenStartData = finalKrakenRun.getGameData().clone();
+        krakenStartData.tryRemoveKraken();
+
+        var krakenPath = finalKrakenRun.getPath();
+        var nearKraken = krakenStartData.getMatrix().point(krakenPath[krakenPath.length - 1]);
+        var chestRun = legRun(nearKraken, gameData.getChest(), krakenStartData);
+        if (chestRun == null) return null;
+
+        var tortugaPath = tortugaRun.getPath();
+        var chestPath = chestRun.getPath();
+        var combinedPath = new int[tortugaPath.length + krakenPath.length + chestPath.length];
+        System.arraycopy(tortugaPath, 0, combinedPath, 0, tortugaPath.length);
+        System.arraycopy(krakenPath, 0, combinedPath, tortugaPath.length, krakenPath.length);
+        var chestOffset = tortugaPath.length + krakenPath.length;
+        System.arraycopy(chestPath, 0, combinedPath, chestOffset, chestPath.length);
+
+        var jackSparrow = gameData.getMatrix().index(gameData.getJackSparrow());
+        takeSnapshot(jackSparrow, combinedPath, chestRun.getGameData());
+
+        var combinedRun = currentSnapshot;
+        currentSnapshot = null;
+
+        return combinedRun;
+    }
+
+    /**
+     * Returns the shortest one of the runs, the first one wins a tie.
+     *
+     * @param runs runs (null if there is no run).
+     * @return the shortest run, null if there are no runs.
+     */
+    private static Snapshot shortestRun(Snapshot... runs) {
+        var result = Stream.of(runs)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingInt(Snapshot::length))
+                .toList();
+
+        return result.isEmpty() ? null : result.get(0);
+    }
+}
+
+/**
+ * Backtracking algorithm over a sea map. Uses greedy point selection and basic heuristic
+ * as the optimizations. Branches are bounded by the Chebyshev distance to the target.
+ * <p>
+ * Each leg first runs bidirectional A*, so the seeder decides the optimal length of the leg
+ * and whether the leg exists at all. The backtracking is bounded by that length and only selects
+ * the first path of the same length in its own move order (the path the unbounded search reports),
+ * the seeder's path is kept if the budget runs out earlier. So a leg costs one bidirectional A* run
+ * plus a depth-first search over the paths no longer than the optimal one.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see GameData
+ * @see Snapshot
+ * @see Point
+ * @see SearchingAlgorithm
+ */
+class Backtracking extends SearchingAlgorithm {
+
+    /**
+     * Heuristic storage. Heuristic is given as a <code>distanceSquared(target)</code>
+     * for each point. Indexed by the cell index.
+     */
+    private final int[] costs;
+
+    /**
+     * Moves buffers for each depth of the run. Grows on demand.
+     */
+    private int[][] movesBuffers = new int[16][];
+
+    /**
+     * Cells of the steps (the current path). Grows on demand.
+     */
+    private int[] cells = new int[16];
+
+    /**
+     * Index of the next move to try for each depth of the run. Grows on demand.
+     */
+    private int[] nextMoves = new int[16];
+
+    /**
+     * Number of the moves for each depth of the run. Grows on demand.
+     */
+    private int[] movesCounts = new int[16];
+
+    /**
+     * Current depth of the run (number of the steps).
+     */
+    private int depth;
+
+    /**
+     * Index of the target cell.
+     */
+    private int targetIndex;
+
+    /**
+     * 2nd-order neighbors buffer.
+     */
+    private final int[] secondNeighbors = new int[4];
+
+    /**
+     * Optimal search which decides the length of the leg, the backtracking is bounded by it.
+     */
+    private final BidirectionalAStar seeder;
+
+    /**
+     * Returns the moves buffer of the given depth, grows the frame stack if needed.
+     *
+     * @param depth run depth.
+     * @return moves buffer.
+     */
+    private int[] movesBuffer(int depth) {
+        if (depth >= movesBuffers.length)
+            movesBuffers = Arrays.copyOf(movesBuffers, Math.max(depth + 1, 2 * movesBuffers.length));
+        if (movesBuffers[depth] == null)
+            movesBuffers[depth] = new int[8];
+
+        if (depth >= cells.length) {
+            var length = Math.max(depth + 1, 2 * cells.length);
+            cells = Arrays.copyOf(cells, length);
+            nextMoves = Arrays.copyOf(nextMoves, length);
+            movesCounts = Arrays.copyOf(movesCounts, length);
+        }
+
+        return movesBuffers[depth];
+    }
+
+    /**
+     * Writes available moves excluding dangerous (except for Kraken), previously observed ones,
+     * and those which have less cost than computed current to <code>out</code>;
+     * sorted by the distance to the target (greedy approach).
+     *
+     * @param cell current cell index.
+     * @param out  moves buffer for cell indices.
+     * @return number of available moves.
+     */
+    private int moves(int cell, int[] out) {
+        var size = safeMoves(MoveKind.FIRST_SCENARIO, cell, out);
+        var count = 0;
+
+        for (int i = 0; i < size; i++)
+            if (costs[out[i]] >= depth) out[count++] = out[i];
+
+        // Stable insertion sort by the distance to the target
+        for (int i = 1; i < count; i++) {
+            var move = out[i];
+            var distance = distanceSquared(move);
+
+            var j = i - 1;
+            for (; j >= 0 && distanceSquared(out[j]) > distance; j--)
+                out[j + 1] = out[j];
+            out[j + 1] = move;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns squared euclidean distance from the given cell to target.
+     *
+     * @param cell cell index.
+     * @return squared euclidean distance from the given cell to target.
+     */
+    private int distanceSquared(int cell) {
+        var width = gameData.getMatrix().getWidth();
+        var dx = cell % width - target.getX();
+        var dy = cell / width - target.getY();
+
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Returns the Chebyshev distance from the given cell to target. It is a lower bound
+     * of the remaining steps in both scenarios: Jack moves only to the neighbors and the corners.
+     *
+     * @param cell cell index.
+     * @return Chebyshev distance from the given cell to target.
+     */
+    private int distance(int cell) {
+        var width = gameData.getMatrix().getWidth();
+        return Math.max(Math.abs(cell % width - target.getX()), Math.abs(cell / width - target.getY()));
+    }
+
+    /**
+     * Steps on the cell: pushes its frame with the available neighbors + corners,
+     * or takes the snapshot if the cell is the target. Skips the cell
+     * if no path through it can be shorter than the best one.
+     *
+     * @param cell cell index.
+     */
+    private void push(int cell) {
+        if (depth + 1 + distance(cell) >= minStepsCount) return;
+        expansions++;
+
+        var moves = movesBuffer(++depth);
+        cells[depth - 1] = cell;
+        nextMoves[depth] = 0;
+        movesCounts[depth] = moves(cell, moves);
+
+        if (cell == targetIndex) {
+            takeSnapshot(-1, Arrays.copyOf(cells, depth), gameData);
+            minStepsCount = depth;
+            movesCounts[depth] = 0;
+        } else updateNeighborCosts(cell, moves, movesCounts[depth]);
+    }
+
+    /**
+     * Performs a backtracking approach from the start cell. The frames are kept
+     * on the explicit stack instead of the call stack, so the depth is limited only by the map size.
+     * Stops when the budget is exhausted.
+     *
+     * @param start start cell index.
+     */
+    private void doRun(int start) {
+        depth = 0;
+        push(start);
+
+        while (depth > 0 && !isExhausted()) {
+            if (nextMoves[depth] < movesCounts[depth]) push(movesBuffers[depth][nextMoves[depth]++]);
+            else depth--;
+        }
+    }
+
+    /**
+     * Wraps backtracking run. Sets start and target, replaces game data,
+     * and then restores it after the run. Returns the best snapshot of this run.
+     * The run is skipped if the seeder finds no path, and it is bounded by the seeder's path length.
+     *
+     * @param start  start point.
+     * @param target target point.
+     * @param data   game data for the run.
+     * @return best snapshot of this run.
+     */
+    @Override
+    public Snapshot partialRun(Point start, Point target, GameData data) {
+        if (start.equals(target)) {
+            takeSnapshot(-1, new int[0], data);
+            var snapshotCopy = currentSnapshot;
+            currentSnapshot = null;
+
+            return snapshotCopy;
+        }
+
+        var tmpGameData = gameData;
+        gameData = data;
+
+        cleanCosts();
+        if (isLosing(start)) return null;
+
+        var seederExpansions = seeder.getExpansions();
+        shareBudget(seeder);
+        var seed = seeder.partialRun(start, target, gameData);
+        joinBudget(seeder, seederExpansions);
+
+        if (seed == null) {
+            gameData = tmpGameData;
+            return null;
+        }
+
+        var startIndex = gameData.getMatrix().index(start);
+
+        this.target = target;
+        targetIndex = gameData.getMatrix().index(target);
+        costs[startIndex] = 0;
+
+        // The seed path is kept if the run does not find a path of the same length
+        var seedPath = new int[seed.length() + 1];
+        seedPath[0] = startIndex;
+        System.arraycopy(seed.getPath(), 0, seedPath, 1, seed.length());
+        takeSnapshot(-1, seedPath, gameData);
+        minStepsCount = seedPath.length + 1;
+
+        doRun(startIndex);
+
+        costs[startIndex] = Integer.MAX_VALUE;
+        cleanCosts();
+
+        // Force reset minStepsCount for other runs
+        minStepsCount = Integer.MAX_VALUE;
+        gameData = tmpGameData;
+
+        var snapshotCopy = currentSnapshot;
+        currentSnapshot = null;
+
+        return snapshotCopy;
+    }
+
+    /**
+     * Resets heuristic costs.
+     */
+    private void cleanCosts() {
+        Arrays.fill(costs, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Updates the heuristic values for the cell's neighbors.
+     *
+     * @param index      current cell index.
+     * @param moves      available moves of the cell.
+     * @param movesCount number of available moves.
+     */
+    private void updateNeighborCosts(int index, int[] moves, int movesCount) {
+        var matrix = gameData.getMatrix();
+        var pointCost = costs[index];
+
+        for (int i = 0; i < movesCount; i++)
+            costs[moves[i]] = Math.min(pointCost + 1, costs[moves[i]]);
+
+        if (scenario == 2) {
+            var size = safeMoves(MoveKind.SECOND_NEIGHBORS, index, secondNeighbors);
+
+            // The middle cell of a 2nd-order neighbor is the mean of the indices
+            for (int i = 0; i < size; i++)
+                if (matrix.isSafe((index + secondNeighbors[i]) / 2))
+                    costs[secondNeighbors[i]] = Math.min(pointCost + 2, costs[secondNeighbors[i]]);
+        }
+    }
+
+    public Backtracking(GameData gameData, int scenario) {
+        super(gameData, scenario);
+        costs = new int[gameData.getMatrix().size()];
+        seeder = new BidirectionalAStar(gameData, scenario);
+        cleanCosts();
+    }
+
+    @Override
+    protected SearchingAlgorithm copy() {
+        return new Backtracking(gameData, scenario);
+    }
+}
+
+/**
+ * Priority queue of the opened cells of A*-like searches. A cell is ordered by its f-score,
+ * the cells with equal f-scores are ordered by the time of their last push or decrease
+ * (first in, first out), so all the implementations poll the cells in the same order.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see IndexedHeap
+ * @see BucketQueue
+ * @see AStar
+ */
+interface OpenSet {
+    boolean isEmpty();
+
+    /**
+     * Indicates if the cell is queued.
+     *
+     * @param cell cell index.
+     * @return true if the cell is queued, false otherwise.
+     */
+    boolean contains(int cell);
+
+    /**
+     * Queues the cell which is not queued yet.
+     *
+     * @param cell  cell index.
+     * @param score f-score.
+     */
+    void offer(int cell, int score);
+
+    /**
+     * Decreases the f-score of the queued cell.
+     *
+     * @param cell  cell index.
+     * @param score new f-score, not greater than the current one.
+     */
+    void decrease(int cell, int score);
+
+    /**
+     * Removes the first cell.
+     *
+     * @return cell index.
+     */
+    int poll();
+
+    /**
+     * Removes all the queued cells.
+     */
+    void clear();
+}
+
+/**
+ * Indexed binary min-heap of the cell indices. Keeps the position of every cell in the heap,
+ * so the membership check is O(1) and the priority of a queued cell can be decreased in O(log n).
+ * Priorities are cached: f-score and the order number packed into a long. The scores may be longs
+ * (e.g. the keys of Lifelong Planning A*), then the order numbers take the bits left by the greatest score.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see OpenSet
+ * @see AStar
+ */
+class IndexedHeap implements OpenSet {
+
+    /**
+     * Queued cells in the heap order.
+     */
+    private final int[] heap;
+
+    /**
+     * Positions of the cells in the heap (-1 if the cell is not queued).
+     */
+    private final int[] positions;
+
+    /**
+     * Cached priorities of the cells: f-score in the high bits, the order number in the low <code>orderBits</code>.
+     */
+    private final long[] priorities;
+
+    /**
+     * Number of the bits of the order numbers (32 unless the scores do not leave them).
+     */
+    private final int orderBits;
+
+    /**
+     * Number of the queued cells.
+     */
+    private int size;
+
+    /**
+     * Next order number.
+     */
+    private int order;
+
+    /**
+     * Initialization of an empty heap.
+     *
+     * @param capacity number of the cells.
+     */
+    public IndexedHeap(int capacity) {
+        this(capacity, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Initialization of an empty heap of the scores up to the given one.
+     *
+     * @param capacity number of the cells.
+     * @param maxScore greatest non-negative score.
+     */
+    public IndexedHeap(int capacity, long maxScore) {
+        heap = new int[capacity];
+        positions = new int[capacity];
+        priorities = new long[capacity];
+        orderBits = Math.min(32, Long.numberOfLeadingZeros(maxScore) - 1);
+        Arrays.fill(positions, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(int cell) {
+        return positions[cell] != -1;
+    }
+
+    /**
+     * Returns the first cell without removing it.
+     *
+     * @return cell index.
+     */
+    public int peek() {
+        return heap[0];
+    }
+
+    /**
+     * Changes the f-score of the queued cell in any direction.
+     *
+     * @param cell  cell index.
+     * @param score new f-score.
+     */
+    public void update(int cell, int score) {
+        update(cell, (long) score);
+    }
+
+    /**
+     * Changes the long score of the queued cell in any direction.
+     *
+     * @param cell  cell index.
+     * @param score new score.
+     */
+    public void update(int cell, long score) {
+        priorities[cell] = priority(score);
+        siftUp(positions[cell]);
+        siftDown(positions[cell]);
+    }
+
+    /**
+     * Removes the queued cell.
+     *
+     * @param cell cell index.
+     */
+    public void remove(int cell) {
+        var position = positions[cell];
+        positions[cell] = -1;
+
+        if (position != --size) {
+            var moved = heap[size];
+            heap[position] = moved;
+            positions[moved] = position;
+            siftDown(position);
+            siftUp(positions[moved]);
+        }
+    }
+
+    /**
+     * Returns the cached f-score of the queued cell.
+     *
+     * @param cell cell index.
+     * @return f-score.
+     */
+    public int score(int cell) {
+        return (int) longScore(cell);
+    }
+
+    /**
+     * Returns the cached long score of the queued cell.
+     *
+     * @param cell cell index.
+     * @return score.
+     */
+    public long longScore(int cell) {
+        return priorities[cell] >> orderBits;
+    }
+
+    @Override
+    public void offer(int cell, int score) {
+        offer(cell, (long) score);
+    }
+
+    /**
+     * Queues the cell which is not queued yet with the long score.
+     *
+     * @param cell  cell index.
+     * @param score score.
+     */
+    public void offer(int cell, long score) {
+        priorities[cell] = priority(score);
+        heap[size] = cell;
+        positions[cell] = size;
+        siftUp(size++);
+    }
+
+    @Override
+    public void decrease(int cell, int score) {
+        priorities[cell] = priority(score);
+        siftUp(positions[cell]);
+    }
+
+    @Override
+    public int poll() {
+        var cell = heap[0];
+        positions[cell] = -1;
+
+        if (--size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+
+        return cell;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++)
+            positions[heap[i]] = -1;
+        size = 0;
+        order = 0;
+    }
+
+    /**
+     * Returns the priority with the next order number. The order number is unsigned, so its wrap
+     * (e.g. in a long replanning session without <code>clear</code>) only changes the order of the ties.
+     *
+     * @param score f-score.
+     * @return priority.
+     */
+    private long priority(long score) {
+        return score << orderBits | order++ & (1L << orderBits) - 1;
+    }
+
+    /**
+     * Moves the cell at the given position up to its place.
+     *
+     * @param position heap position.
+     */
+    private void siftUp(int position) {
+        var cell = heap[position];
+
+        while (position > 0) {
+            var parent = (position - 1) >>> 1;
+            if (priorities[heap[parent]] <= priorities[cell]) break;
+
+            heap[position] = heap[parent];
+            positions[heap[position]] = position;
+            position = parent;
+        }
+
+        heap[position] = cell;
+        positions[cell] = position;
+    }
+
+    /**
+     * Moves the cell at the given position down to its place.
+     *
+     * @param position heap position.
+     */
+    private void siftDown(int position) {
+        var cell = heap[position];
+
+        while (true) {
+            var child = 2 * position + 1;
+            if (child >= size) break;
+            if (child + 1 < size && priorities[heap[child + 1]] < priorities[heap[child]]) child++;
+            if (priorities[cell] <= priorities[heap[child]]) break;
+
+            heap[position] = heap[child];
+            positions[heap[position]] = position;
+            position = child;
+        }
+
+        heap[position] = cell;
+        positions[cell] = position;
+    }
+}
+
+/**
+ * Bucket (Dial) queue of the cell indices. F-scores are small non-negative integers, so the cells
+ * are kept in first in, first out buckets indexed by the f-score, and push and poll take O(1)
+ * amortized time. A decreased cell is appended to its new bucket, its old entry is skipped by the poll.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see OpenSet
+ * @see Dial
+ */
+class BucketQueue implements OpenSet {
+
+    /**
+     * Bucket entries: order number in the high 32 bits, cell index in the low ones.
+     */
+    private long[][] buckets = new long[0][];
+
+    /**
+     * Index of the first entry of each bucket.
+     */
+    private int[] heads = new int[0];
+
+    /**
+     * Index after the last entry of each bucket.
+     */
+    private int[] tails = new int[0];
+
+    /**
+     * Order numbers of the last pushes of the cells (-1 if the cell is not queued).
+     */
+    private final int[] orders;
+
+    /**
+     * Number of the queued cells.
+     */
+    private int size;
+
+    /**
+     * Least f-score which bucket may be not empty.
+     */
+    private int min;
+
+    /**
+     * Greatest used f-score.
+     */
+    private int max = -1;
+
+    /**
+     * Next order number.
+     */
+    private int order;
+
+    /**
+     * Initialization of an empty queue.
+     *
+     * @param capacity number of the cells.
+     */
+    public BucketQueue(int capacity) {
+        orders = new int[capacity];
+        Arrays.fill(orders, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(int cell) {
+        return orders[cell] != -1;
+    }
+
+    @Override
+    public void offer(int cell, int score) {
+        push(cell, score);
+        size++;
+    }
+
+    @Override
+    public void decrease(int cell, int score) {
+        push(cell, score);
+    }
+
+    @Override
+    public int poll() {
+        while (true) {
+            while (heads[min] == tails[min])
+                min++;
+
+            var entry = buckets[min][heads[min]++];
+            var cell = (int) entry;
+
+            // Skip the entries left by the decreased cells
+            if (orders[cell] == (int) (entry >>> 32)) {
+                orders[cell] = -1;
+                size--;
+                return cell;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int score = 0; score <= max; score++) {
+            for (int i = heads[score]; i < tails[score]; i++)
+                orders[(int) buckets[score][i]] = -1;
+
+            heads[score] = 0;
+            tails[score] = 0;
+        }
+
+        size = 0;
+        min = 0;
+        max = -1;
+        order = 0;
+    }
+
+    /**
+     * Appends the cell to the bucket of the f-score.
+     *
+     * @param cell  cell index.
+     * @param score f-score.
+     */
+    private void push(int cell, int score) {
+        if (score >= buckets.length) grow(score);
+
+        if (tails[score] == buckets[score].length)
+            buckets[score] = Arrays.copyOf(buckets[score], Math.max(8, 2 * tails[score]));
+
+        orders[cell] = order;
+        buckets[score][tails[score]++] = (long) order++ << 32 | cell;
+
+        min = Math.min(min, score);
+        max = Math.max(max, score);
+    }
+
+    /**
+     * Adds the buckets up to the given f-score.
+     *
+     * @param score f-score.
+     */
+    private void grow(int score) {
+        var length = Math.max(score + 1, 2 * buckets.length);
+        var from = buckets.length;
+
+        buckets = Arrays.copyOf(buckets, length);
+        heads = Arrays.copyOf(heads, length);
+        tails = Arrays.copyOf(tails, length);
+
+        for (int i = from; i < length; i++)
+            buckets[i] = new long[0];
+    }
+}
+
+/**
+ * A* algorithm over a sea map. Implementation is taken from the lecture 5
+ * as the optimizations. Node data (parent and cost) is stored in flat arrays indexed by the cell index,
+ * the opened nodes are kept in an indexed heap with cached f-scores.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @author Innopolis University F22-Introduction-to-AI course instructors
+ * @see GameData
+ * @see Snapshot
+ * @see Point
+ * @see SearchingAlgorithm
+ */
+class AStar extends SearchingAlgorithm {
+
+    /**
+     * Parent nodes (-1 for none).
+     */
+    private final int[] parents;
+
+    /**
+     * G costs - lengths of the paths from <code>start</code> to the nodes.
+     */
+    private final int[] gCosts;
+
+    /**
+     * Queue for opened nodes.
+     */
+    private final OpenSet open;
+
+    /**
+     * Closed (observed) nodes.
+     */
+    private final BitBoard closed;
+
+    /**
+     * Moves buffer.
+     */
+    private final int[] moves = new int[8];
+
+    /**
+     * Returns the f score of the node by the formula <code>f = g + h</code>
+     *
+     * <ol>
+     *     <li><code>g</code> = g cost</li>
+     *     <li><code>h</code> - heuristic function result</li>
+     * </ol>
+     * <p>
+     * In this case <code>h = max(abs(x - target.x), abs(y - target.y))</code>
+     *
+     * @param node node.
+     * @return f score.
+     */
+    private int f(int node) {
+        var width = gameData.getMatrix().getWidth();
+        var h = Math.max(
+                Math.abs(node % width - target.getX()),
+                Math.abs(node / width - target.getY())
+        );
+
+        return h + gCosts[node];
+    }
+
+    /**
+     * Resets the data of the nodes.
+     */
+    private void cleanNodes() {
+        Arrays.fill(parents, -1);
+        Arrays.fill(gCosts, 0);
+    }
+
+    /**
+     * Writes available moves for the given <code>node</code> to the moves buffer.
+     *
+     * @param node node for which the available moves will be returned.
+     * @return number of available moves.
+     */
+    private int moves(int node) {
+        var size = safeMoves(MoveKind.FIRST_SCENARIO, node, moves);
+        var count = 0;
+
+        for (int i = 0; i < size; i++)
+            if (!closed.get(moves[i])) moves[count++] = moves[i];
+
+        return count;
+    }
+
+    /**
+     * Writes extra 4 second-order neighbors for the given <code>node</code> to the moves buffer.
+     *
+     * @param node node for which the available moves will be returned.
+     * @return number of extra second-order neighbors.
+     */
+    private int secondScenarioMoves(int node) {
+        var matrix = gameData.getMatrix();
+        var size = safeMoves(MoveKind.SECOND_NEIGHBORS, node, moves);
+        var count = 0;
+
+        // The middle cell of a 2nd-order neighbor is the mean of the indices
+        for (int i = 0; i < size; i++)
+            if (matrix.isSafe((node + moves[i]) / 2)) moves[count++] = moves[i];
+
+        return count;
+    }
+
+    /**
+     * Core A* algorithm. Implementation is taken from the lecture notes.
+     * Stops when the budget is exhausted.
+     *
+     * @param start start node.
+     */
+    private void doRun(int start) {
+        open.offer(start, f(start));
+
+        while (!open.isEmpty() && !isExhausted()) {
+
+            int current = open.poll();
+            expansions++;
+
+            for (int i = 0, size = moves(current); i < size; i++) {
+                var n = moves[i];
+                if (!open.contains(n)) {
+                    gCosts[n] = gCosts[current] + 1;
+                    parents[n] = current;
+                    open.offer(n, f(n));
+                } else {
+                    if (gCosts[current] + 1 < gCosts[n]) {
+                        gCosts[n] = gCosts[current] + 1;
+                        parents[n] = current;
+                        open.decrease(n, f(n));
+                    }
+                }
+
+                closed.set(n);
+            }
+
+            if (scenario == 2)
+                for (int i = 0, size = secondScenarioMoves(current); i < size; i++) {
+                    var n = moves[i];
+                    if (!open.contains(n))
+                        gCosts[n] = gCosts[current] + 2;
+                    else if (gCosts[current] + 2 < gCosts[n]) {
+                        gCosts[n] = gCosts[current] + 2;
+                        open.decrease(n, f(n));
+                    }
+                }
+
+            closed.set(current);
+        }
+    }
+
+    public AStar(GameData gameData, int scenario) {
+        this(gameData, scenario, new IndexedHeap(gameData.getMatrix().size()));
+    }
+
+    @Override
+    protected SearchingAlgorithm copy() {
+        return new AStar(gameData, scenario);
+    }
+
+    /**
+     * Initialization with the custom queue for opened nodes.
+     *
+     * @param gameData game data.
+     * @param scenario game scenario.
+     * @param open     empty queue for opened nodes.
+     */
+    protected AStar(GameData gameData, int scenario, OpenSet open) {
+        super(gameData, scenario);
+
+        var matrix = gameData.getMatrix();
+        parents = new int[matrix.size()];
+        gCosts = new int[matrix.size()];
+        closed = new BitBoard(matrix.getWidth(), matrix.getHeight());
+        this.open = open;
+    }
+
+    /**
+     * Wraps A* run. Sets start and target, replaces game data,
+     * and then restores it after the run. Returns the best snapshot of this run.
+     *
+     * @param start  start point.
+     * @param target target point.
+     * @param data   game data for the run.
+     * @return best snapshot of this run.
+     */
+    @Override
+    public Snapshot partialRun(Point start, Point target, GameData data) {
+        this.target = target;
+
+        if (start.equals(target)) {
+            takeSnapshot(-1, new int[0], data);
+            var snapshotCopy = currentSnapshot;
+            currentSnapshot = null;
+
+            return snapshotCopy;
+        }
+
+        if (isLosing(start)) return null;
+
+        var tmpGameData = gameData;
+        gameData = data;
+
+        var matrix = gameData.getMatrix();
+        var startIndex = matrix.index(start);
+        var targetIndex = matrix.index(target);
+
+        closed.clear();
+        open.clear();
+        cleanNodes();
+
+        doRun(startIndex);
+
+        var length = 0;
+        for (int current = targetIndex; current != -1 && current != startIndex; current = parents[current])
+            length++;
+
+        var path = new int[length];
+        for (int current = targetIndex, i = length - 1; i >= 0; current = parents[current])
+            path[i--] = current;
+
+        // Fix for the blocked kraken cells: If we cannot connect our path with the start point => return null
+        if (
+                length == 0 || matrix.firstScenario(start.getX(), start.getY())
+                        .noneMatch(p -> p.equals(matrix.point(path[0])))
+        ) {
+            currentSnapshot = null;
+            return null;
+        }
+
+        takeSnapshot(startIndex, path, gameData);
+
+        gameData = tmpGameData;
+        var snapshotCopy = currentSnapshot;
+        currentSnapshot = null;
+
+        return snapshotCopy;
+    }
+}
+
+/**
+ * A* algorithm over a sea map with a bucket (Dial) queue for opened nodes. All the move costs are
+ * 1 or 2, so the f-scores are small integers and the queue operations take O(1) amortized time.
+ * The nodes are polled in the same order as in <code>AStar</code>, so the results are identical.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see AStar
+ * @see BucketQueue
+ * @see SearchingAlgorithm
+ */
+class Dial extends AStar {
+    public Dial(GameData gameData, int scenario) {
+        super(gameData, scenario, new BucketQueue(gameData.getMatrix().size()));
+    }
+
+    @Override
+    protected SearchingAlgorithm copy() {
+        return new Dial(gameData, scenario);
+    }
+}
+
+/**
+ * Jump Point Search over a sea map for the first scenario (uniform cost 8-connected moves).
+ * Runs A* over the jump points only: straight and diagonal runs over the open sea are skipped
+ * by the jumps, which stop at the target and at the cells with forced neighbors (next to hazards).
+ * The paths have the optimal length, the cells between the jump points are restored for the snapshots.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see AStar
+ * @see SearchingAlgorithm
+ */
+class JumpPointSearch extends SearchingAlgorithm {
+
+    /**
+     * Parent jump points (-1 for none).
+     */
+    private final int[] parents;
+
+    /**
+     * G costs - lengths of the paths from <code>start</code> to the jump points.
+     */
+    private final int[] gCosts;
+
+    /**
+     * Queue for opened jump points.
+     */
+    private final OpenSet open;
+
+    /**
+     * Closed (expanded) jump points.
+     */
+    private final BitBoard closed;
+
+    /**
+     * Index of the target cell.
+     */
+    private int targetIndex;
+
+    /**
+     * @throws IllegalArgumentException if the scenario is not the first one.
+     */
+    public JumpPointSearch(GameData gameData, int scenario) {
+        super(gameData, scenario);
+
+        if (scenario != 1)
+            throw new IllegalArgumentException("Jump Point Search supports only the first scenario");
+
+        var matrix = gameData.getMatrix();
+        parents = new int[matrix.size()];
+        gCosts = new int[matrix.size()];
+        open = new IndexedHeap(matrix.size());
+        closed = new BitBoard(matrix.getWidth(), matrix.getHeight());
+    }
+
+    @Override
+    protected SearchingAlgorithm copy() {
+        return new JumpPointSearch(gameData, scenario);
+    }
+
+    /**
+     * Indicates if the cell by the given coordinates exists and is safe to step on.
+     *
+     * @param x x-coordinate.
+     * @param y y-coordinate.
+     * @return true if the cell can be stepped on, false otherwise.
+     */
+    private boolean isWalkable(int x, int y) {
+        var matrix = gameData.getMatrix();
+        return matrix.contains(x, y) && matrix.isSafe(matrix.index(x, y));
+    }
+
+    /**
+     * Indicates if the cell by the given coordinates has a forced neighbor when it is entered
+     * in the given direction, i.e. a neighbor which cannot be reached optimally bypassing the cell.
+     *
+     * @param x  x-coordinate.
+     * @param y  y-coordinate.
+     * @param dx horizontal direction.
+     * @param dy vertical direction.
+     * @return true if the cell has a forced neighbor, false otherwise.
+     */
+    private boolean hasForcedNeighbor(int x, int y, int dx, int dy) {
+        if (dx != 0 && dy != 0)
+            return !isWalkable(x - dx, y) && isWalkable(x - dx, y + dy)
+                    || !isWalkable(x, y - dy) && isWalkable(x + dx, y - dy);
+        if (dx != 0)
+            return !isWalkable(x, y + 1) && isWalkable(x + dx, y + 1)
+                    || !isWalkable(x, y - 1) && isWalkable(x + dx, y - 1);
+        return !isWalkable(x + 1, y) && isWalkable(x + 1, y + dy)
+                || !isWalkable(x - 1, y) && isWalkable(x - 1, y + dy);
+    }
+
+    /**
+     * Jumps from the cell in the given direction until the next jump point.
+     *
+     * @param x  x-coordinate.
+     * @param y  y-coordinate.
+     * @param dx horizontal direction.
+     * @param dy vertical direction.
+     * @return index of the jump point, -1 if there is no jump point in the direction.
+     */
+    private int jump(int x, int y, int dx, int dy) {
+        var matrix = gameData.getMatrix();
+
+        while (true) {
+            x += dx;
+            y += dy;
+
+            if (!isWalkable(x, y)) return -1;
+
+            var index = matrix.index(x, y);
+            if (index == targetIndex || hasForcedNeighbor(x, y, dx, dy)) return index;
+
+            // A diagonal run stops where one of its straight runs finds a jump point
+            if (dx != 0 && dy != 0 && (jump(x, y, dx, 0) != -1 || jump(x, y, 0, dy) != -1)) return index;
+        }
+    }
+
+    /**
+     * Jumps from the node in the given direction and relaxes the found jump point.
+     *
+     * @param node node.
+     * @param dx   horizontal direction.
+     * @param dy   vertical direction.
+     */
+    private void relax(int node, int dx, int dy) {
+        var width = gameData.getMatrix().getWidth();
+        var x = node % width;
+        var y = node / width;
+
+        var next = jump(x, y, dx, dy);
+        if (next == -1 || closed.get(next)) return;
+
+        var g = gCosts[node] + Math.max(Math.abs(next % width - x), Math.abs(next / width - y));
+
+        if (!open.contains(next)) {
+            gCosts[next] = g;
+            parents[next] = node;
+            open.offer(next, g + h(next));
+        } else if (g < gCosts[next]) {
+            gCosts[next] = g;
+            parents[next] = node;
+            open.decrease(next, g + h(next));
+        }
+    }
+
+    /**
+     * Returns the heuristic <code>h = max(abs(x - target.x), abs(y - target.y))</code> of the node.
+     *
+     * @param node node.
+     * @return heuristic value.
+     */
+    private int h(int node) {
+        var width = gameData.getMatrix().getWidth();
+        return Math.max(Math.abs(node % width - target.getX()), Math.abs(node / width - target.getY()));
+    }
+
+    /**
+     * Expands the node: all 8 directions for the start, the natural and the forced directions otherwise.
+     *
+     * @param node node.
+     */
+    private void expand(int node) {
+        var width = gameData.getMatrix().getWidth();
+
+        if (parents[node] == -1) {
+            for (int dx = -1; dx <= 1; dx++)
+                for (int dy = -1; dy <= 1; dy++)
+                    if (dx != 0 || dy != 0) relax(node, dx, dy);
+            return;
+        }
+
+        var x = node % width;
+        var y = node / width;
+        var dx = Integer.signum(x - parents[node] % width);
+        var dy = Integer.signum(y - parents[node] / width);
+
+        if (dx != 0 && dy != 0) {
+            relax(node, dx, 0);
+            relax(node, 0, dy);
+            relax(node, dx, dy);
+            if (!isWalkable(x - dx, y)) relax(node, -dx, dy);
+            if (!isWalkable(x, y - dy)) relax(node, dx, -dy);
+        } else if (dx != 0) {
+            relax(node, dx, 0);
+            if (!isWalkable(x, y + 1)) relax(node, dx, 1);
+            if (!isWalkable(x, y - 1)) relax(node, dx, -1);
+        } else {
+            relax(node, 0, dy);
+            if (!isWalkable(x + 1, y)) relax(node, 1, dy);
+            if (!isWalkable(x - 1, y)) relax(node, -1, dy);
+        }
+    }
+
+    /**
+     * Core A* algorithm over the jump points. Stops when the target is expanded.
+     *
+     * @param start start node.
+     */
+    private void doRun(int start) {
+        gCosts[start] = 0;
+        open.offer(start, h(start));
+
+        while (!open.isEmpty()) {
+            var current = open.poll();
+            closed.set(current);
+            expansions++;
+
+            if (current == targetIndex) return;
+            expand(current);
+        }
+    }
+
+    /**
+     * Restores the cells of the path from the start to the target through the jump points.
+     *
+     * @param start start node.
+     * @return path cell indices excluding the start.
+     */
+    private int[] path(int start) {
+        var width = gameData.getMatrix().getWidth();
+        var length = gCosts[targetIndex];
+        var path = new int[length];
+        var i = length - 1;
+
+        for (int node = targetIndex; node != start; node = parents[node]) {
+            var parent = parents[node];
+            var dx = Integer.signum(parent % width - node % width);
+            var dy = Integer.signum(parent / width - node / width);
+
+            for (int cell = node; cell != parent; cell += dy * width + dx)
+                path[i--] = cell;
+        }
+
+        return path;
+    }
+
+    /**
+     * Wraps Jump Point Search run. Sets start and target, replaces game data,
+     * and then restores it after the run. Returns the best snapshot of this run.
+     *
+     * @param start  start point.
+     * @param target target point.
+     * @param data   game data for the run.
+     * @return best snapshot of this run.
+     */
+    @Override
+    public Snapshot partialRun(Point start, Point target, GameData data) {
+        this.target = target;
+
+        if (start.equals(target)) {
+            takeSnapshot(-1, new int[0], data);
+            var snapshotCopy = currentSnapshot;
+            currentSnapshot = null;
+
+            return snapshotCopy;
+        }
+
+        if (isLosing(start)) return null;
+
+        var tmpGameData = gameData;
+        gameData = data;
+
+        var matrix = gameData.getMatrix();
+        var startIndex = matrix.index(start);
+        targetIndex = matrix.index(target);
+
+        closed.clear();
+        open.clear();
+        Arrays.fill(parents, -1);
+
+        doRun(startIndex);
+
+        if (!closed.get(targetIndex)) {
+            gameData = tmpGameData;
+            return null;
+        }
+
+        takeSnapshot(startIndex, path(startIndex), gameData);
+
+        gameData = tmpGameData;
+        var snapshotCopy = currentSnapshot;
+        currentSnapshot = null;
+
+        return snapshotCopy;
+    }
+}
+
+/**
+ * Bidirectional A* over a sea map. Searches from the start and from the target by turns
+ * (the side with the smaller frontier goes first) and keeps the shortest path through the cells
+ * reached by both searches. Stops when this path is not longer than the lower bound of the paths
+ * through the cells left in any frontier, so the found path is optimal.
+ * The moves are the first scenario moves in both scenarios: a second-order move is never shorter
+ * than two first-order moves through its middle cell.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see AStar
+ * @see SearchingAlgorithm
+ */
+class BidirectionalAStar extends SearchingAlgorithm {
+
+    /**
+     * Parents of the nodes of the forward search (from the start).
+     */
+    private final int[] forwardParents;
+
+    /**
+     * Parents of the nodes of the backward search (from the target), i.e. the next cells of the path.
+     */
+    private final int[] backwardParents;
+
+    /**
+     * G costs of the forward search (<code>Integer.MAX_VALUE</code> for unreached nodes).
+     */
+    private final int[] forwardCosts;
+
+    /**
+     * G costs of the backward search (<code>Integer.MAX_VALUE</code> for unreached nodes).
+     */
+    private final int[] backwardCosts;
+
+    /**
+     * Opened nodes of the forward search.
+     */
+    private final IndexedHeap forwardOpen;
+
+    /**
+     * Opened nodes of the backward search.
+     */
+    private final IndexedHeap backwardOpen;
+
+    /**
+     * Closed nodes of the forward search.
+     */
+    private final BitBoard forwardClosed;
+
+    /**
+     * Closed nodes of the backward search.
+     */
+    private final BitBoard backwardClosed;
+
+    /**
+     * Moves buffer.
+     */
+    private final int[] moves = new int[8];
+
+    /**
+     * Length of the best found path (<code>Integer.MAX_VALUE</code> if there is no path yet).
+     */
+    private int bestCost;
+
+    /**
+     * Node where the searches of the best found path meet.
+     */
+    private int meeting;
+
+    public BidirectionalAStar(GameData gameData, int scenario) {
+        super(gameData, scenario);
+
+        var matrix = gameData.getMatrix();
+        forwardParents = new int[matrix.size()];
+        backwardParents = new int[matrix.size()];
+        forwardCosts = new int[matrix.size()];
+        backwardCosts = new int[matrix.size()];
+        forwardOpen = new IndexedHeap(matrix.size());
+        backwardOpen = new IndexedHeap(matrix.size());
+        forwardClosed = new BitBoard(matrix.getWidth(), matrix.getHeight());
+        backwardClosed = new BitBoard(matrix.getWidth(), matrix.getHeight());
+    }
+
+    @Override
+    protected SearchingAlgorithm copy() {
+        return new BidirectionalAStar(gameData, scenario);
+    }
+
+    /**
+     * Returns the Chebyshev distance between the nodes.
+     *
+     * @param a first node.
+     * @param b second node.
+     * @return distance.
+     */
+    private int distance(int a, int b) {
+        var width = gameData.getMatrix().getWidth();
+        return Math.max(Math.abs(a % width - b % width), Math.abs(a / width - b / width));
+    }
+
+    /**
+     * Returns the least f-score of the opened nodes.
+     *
+     * @param open opened nodes.
+     * @return f-score.
+     */
+    private static int minScore(IndexedHeap open) {
+        return open.score(open.peek());
+    }
+
+    /**
+     * Expands the first opened node of one of the searches and updates the best found path.
+     *
+     * @param open       opened nodes of the search.
+     * @param closed     closed nodes of the search.
+     * @param costs      g costs of the search.
+     * @param parents    parents of the search.
+     * @param otherCosts g costs of the opposite search.
+     * @param goal       node the search is heading to.
+     */
+    private void expand(IndexedHeap open, BitBoard closed, int[] costs, int[] parents, int[] otherCosts, int goal) {
+        var current = open.poll();
+        closed.set(current);
+        expansions++;
+
+        for (int i = 0, size = safeMoves(MoveKind.FIRST_SCENARIO, current, moves); i < size; i++) {
+            var n = moves[i];
+            if (closed.get(n)) continue;
+
+            var g = costs[current] + 1;
+            if (g >= costs[n]) continue;
+
+            costs[n] = g;
+            parents[n] = current;
+
+            if (open.contains(n)) open.decrease(n, g + distance(n, goal));
+            else open.offer(n, g + distance(n, goal));
+
+            if (otherCosts[n] != Integer.MAX_VALUE && g + otherCosts[n] < bestCost) {
+                bestCost = g + otherCosts[n];
+                meeting = n;
+            }
+        }
+    }
+
+    /**
+     * Core bidirectional A* algorithm. Stops when the budget is exhausted, then the best found path
+     * (if any) is kept as the best-effort result.
+     *
+     * @param start  start node.
+     * @param target target node.
+     */
+    private void doRun(int start, int target) {
+        forwardCosts[start] = 0;
+        backwardCosts[target] = 0;
+        forwardOpen.offer(start, distance(start, target));
+        backwardOpen.offer(target, distance(start, target));
+
+        while (!forwardOpen.isEmpty() && !backwardOpen.isEmpty() && !isExhausted()) {
+            // Every path through an opened node is not shorter than its f-score
+            if (bestCost <= Math.max(minScore(forwardOpen), minScore(backwardOpen))) return;
+
+            if (forwardOpen.size() <= backwardOpen.size())
+                expand(forwardOpen, forwardClosed, forwardCosts, forwardParents, backwardCosts, target);
+            else
+                expand(backwardOpen, backwardClosed, backwardCosts, backwardParents, forwardCosts, start);
+        }
+    }
+
+    /**
+     * Restores the path from the start to the target through the meeting node.
+     *
+     * @param start  start node.
+     * @param target target node.
+     * @return path cell indices excluding the start.
+     */
+    private int[] path(int start, int target) {
+        var path = new int[bestCost];
+        var i = forwardCosts[meeting] - 1;
+
+        for (int node = meeting; node != start; node = forwardParents[node])
+            path[i--] = node;
+
+        i = forwardCosts[meeting];
+        for (int node = meeting; node != target; )
+            path[i++] = node = backwardParents[node];
+
+        return path;
+    }
+
+    /**
+     * Wraps bidirectional A* run. Sets start and target, replaces game data,
+     * and then restores it after the run. Returns the best snapshot of this run.
+     *
+     * @param start  start point.
+     * @param target target point.
+     * @param data   game data for the run.
+     * @return best snapshot of this run.
+     */
+    @Override
+    public Snapshot partialRun(Point start, Point target, GameData data) {
+        this.target = target;
+
+        if (start.equals(target)) {
+            takeSnapshot(-1, new int[0], data);
+            var snapshotCopy = currentSnapshot;
+            currentSnapshot = null;
+
+            return snapshotCopy;
+        }
+
+        var tmpGameData = gameData;
+        gameData = data;
+
+        var matrix = gameData.getMatrix();
+        var startIndex = matrix.index(start);
+        var targetIndex = matrix.index(target);
+
+        if (isLosing(start) || isLosing(target)) {
+            gameData = tmpGameData;
+            return null;
+        }
+
+        forwardOpen.clear();
+        backwardOpen.clear();
+        forwardClosed.clear();
+        backwardClosed.clear();
+        Arrays.fill(forwardCosts, Integer.MAX_VALUE);
+        Arrays.fill(backwardCosts, Integer.MAX_VALUE);
+        bestCost = Integer.MAX_VALUE;
+
+        doRun(startIndex, targetIndex);
+
+        if (bestCost == Integer.MAX_VALUE) {
+            gameData = tmpGameData;
+            return null;
+        }
+
+        takeSnapshot(startIndex, path(startIndex, targetIndex), gameData);
+
+        gameData = tmpGameData;
+        var snapshotCopy = currentSnapshot;
+        currentSnapshot = null;
+
+        return snapshotCopy;
+    }
+}
+
+/**
+ * Iterative deepening A* over a sea map. Performs depth-first searches bounded by the f-score
+ * <code>g + h</code> (h is the Chebyshev distance to the target as in A*), the bound grows to the least
+ * exceeding f-score after each failed search. Keeps only the frames of the current path, so the memory
+ * of the searches depends on the path length and not on the map size. The bounded searches cannot prove
+ * that the target is unreachable without enumerating all the paths, so the reachability is checked
+ * by a breadth-first search over the map before them. The found path is optimal.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see AStar
+ * @see Backtracking
+ * @see SearchingAlgorithm
+ */
+class IterativeDeepeningAStar extends SearchingAlgorithm {
+
+    /**
+     * Cells of the current path, the start is the first one. Grows on demand.
+     */
+    private int[] cells = new int[16];
+
+    /**
+     * Position of the next move to try in <code>moves</code> for each depth of the search. Grows on demand.
+     */
+    private int[] nextMoves = new int[16];
+
+    /**
+     * Position after the last move in <code>moves</code> for each depth of the search. Grows on demand.
+     */
+    private int[] movesCounts = new int[16];
+
+    /**
+     * Moves of each depth of the search, 8 per depth. Grows on demand.
+     */
+    private int[] moves = new int[16 * 8];
+
+    /**
+     * Hash table of the path cells: the last depth of each bucket (-1 for none). Grows with the path.
+     */
+    private int[] buckets = new int[16];
+
+    /**
+     * Previous depth in the bucket of the cell of each depth (-1 for none). Grows on demand.
+     */
+    private int[] chains = new int[16];
+
+    /**
+     * Safe moves buffer.
+     */
+    private final int[] buffer = new int[8];
+
+    /**
+     * Queue of the reachability check.
+     */
+    private final int[] queue;
+
+    /**
+     * Cells reached by the reachability check.
+     */
+    private final BitBoard reached;
+
+    /**
+     * Index of the target cell.
+     */
+    private int targetIndex;
+
+    /**
+     * Least f-score which exceeded the bound of the current search.
+     */
+    private int nextBound;
+
+    public IterativeDeepeningAStar(GameData gameData, int scenario) {
+        super(gameData, scenario);
+
+        var matrix = gameData.getMatrix();
+        queue = new int[matrix.size()];
+        reached = new BitBoard(matrix.getWidth(), matrix.getHeight());
+    }
+
+    @Override
+    protected SearchingAlgorithm copy() {
+        return new IterativeDeepeningAStar(gameData, scenario);
+    }
+
+    /**
+     * Returns the heuristic <code>h = max(abs(x - target.x), abs(y - target.y))</code> of the cell.
+     *
+     * @param cell cell index.
+     * @return heuristic value.
+     */
+    private int h(int cell) {
+        var width = gameData.getMatrix().getWidth();
+        return Math.max(Math.abs(cell % width - target.getX()), Math.abs(cell / width - target.getY()));
+    }
+
+    /**
+     * Indicates if the cell is adjacent to (or is the same as) any cell of the path before the given depth.
+     *
+     * @param cell  cell index.
+     * @param depth depth of the current cell of the path.
+     * @return true if there is a shortcut to the cell, false otherwise.
+     */
+    private boolean hasShortcut(int cell, int depth) {
+        var matrix = gameData.getMatrix();
+        var x = cell % matrix.getWidth();
+        var y = cell / matrix.getWidth();
+
+        for (int dx = -1; dx <= 1; dx++)
+            for (int dy = -1; dy <= 1; dy++)
+                if (matrix.contains(x + dx, y + dy) && isOnPath(matrix.index(x + dx, y + dy), depth)) return true;
+
+        return false;
+    }
+
+    /**
+     * Indicates if the cell is on the path before the given depth.
+     *
+     * @param cell  cell index.
+     * @param depth depth of the current cell of the path.
+     * @return true if the cell is on the path, false otherwise.
+     */
+    private boolean isOnPath(int cell, int depth) {
+        for (int i = buckets[bucket(cell)]; i != -1; i = chains[i])
+            if (cells[i] == cell) return i < depth;
+
+        return false;
+    }
+
+    /**
+     * Returns the hash table bucket of the cell.
+     *
+     * @param cell cell index.
+     * @return bucket index.
+     */
+    private int bucket(int cell) {
+        return (cell * 0x9E3779B9) >>> 1 & buckets.length - 1;
+    }
+
+    /**
+     * Adds the cell of the given depth to the hash table of the path cells.
+     * The cells are removed in the reverse order, so every cell is the first one of its bucket when removed.
+     *
+     * @param depth depth of the cell.
+     */
+    private void hash(int depth) {
+        var bucket = bucket(cells[depth]);
+        chains[depth] = buckets[bucket];
+        buckets[bucket] = depth;
+    }
+
+    /**
+     * Removes the last cell of the path from the hash table of the path cells.
+     *
+     * @param depth depth of the cell.
+     */
+    private void unhash(int depth) {
+        buckets[bucket(cells[depth])] = chains[depth];
+    }
+
+    /**
+     * Indicates if the target is reachable from the start. Sweeps the safe area of the start
+     * breadth-first until the target is reached or the area is exhausted.
+     *
+     * @param start  start cell index.
+     * @param target target cell index.
+     * @return true if the target is reachable, false otherwise.
+     */
+    private boolean isReachable(int start, int target) {
+        reached.clear();
+        reached.set(start);
+        queue[0] = start;
+
+        for (int head = 0, tail = 1; head < tail; head++)
+            for (int i = 0, size = safeMoves(MoveKind.FIRST_SCENARIO, queue[head], buffer); i < size; i++) {
+                var next = buffer[i];
+                if (next == target) return true;
+                if (reached.get(next)) continue;
+
+                reached.set(next);
+                queue[tail++] = next;
+            }
+
+        return false;
+    }
+
+    /**
+     * Pushes the frame of the cell with its safe moves sorted by the heuristic.
+     *
+     * @param depth depth of the cell.
+     * @param cell  cell index.
+     */
+    private void push(int depth, int cell) {
+        if (depth >= cells.length) {
+            var length = 2 * cells.length;
+            cells = Arrays.copyOf(cells, length);
+            nextMoves = Arrays.copyOf(nextMoves, length);
+            movesCounts = Arrays.copyOf(movesCounts, length);
+            moves = Arrays.copyOf(moves, 8 * length);
+            chains = Arrays.copyOf(chains, length);
+
+            // Rehashes the path into the table of the new size
+            buckets = new int[length];
+            Arrays.fill(buckets, -1);
+            for (int i = 0; i < depth; i++)
+                hash(i);
+        }
+
+        cells[depth] = cell;
+        hash(depth);
+        nextMoves[depth] = 8 * depth;
+        movesCounts[depth] = safeMoves(MoveKind.FIRST_SCENARIO, cell, buffer);
+        expansions++;
+
+        // Stable insertion sort by the heuristic
+        for (int i = 0; i < movesCounts[depth]; i++) {
+            var move = buffer[i];
+            var h = h(move);
+
+            var j = 8 * depth + i - 1;
+            for (; j >= 8 * depth && h(moves[j]) > h; j--)
+                moves[j + 1] = moves[j];
+            moves[j + 1] = move;
+        }
+
+        movesCounts[depth] += 8 * depth;
+    }
+
+    /**
+     * Performs a depth-first search from the start bounded by the given f-score.
+     * A move to a cell adjacent to any cell of the path except the current one is skipped:
+     * such a path has a shortcut and cannot be optimal. It also rules out the cycles.
+     * Stops when the budget is exhausted.
+     *
+     * @param start start cell index.
+     * @param bound f-score bound.
+     * @return depth of the target if it is found, -1 otherwise.
+     */
+    private int doRun(int start, int bound) {
+        var depth = 0;
+        Arrays.fill(buckets, -1);
+        push(depth, start);
+
+        while (depth >= 0 && !isExhausted()) {
+            if (nextMoves[depth] == movesCounts[depth]) {
+                unhash(depth--);
+                continue;
+            }
+
+            var next = moves[nextMoves[depth]++];
+            var f = depth + 1 + h(next);
+
+            // The moves are sorted by the heuristic, so the rest of them exceed the bound too
+            if (f > bound) {
+                nextBound = Math.min(nextBound, f);
+                nextMoves[depth] = movesCounts[depth];
+                continue;
+            }
+
+            if (hasShortcut(next, depth)) continue;
+
+            push(++depth, next);
+            if (next == targetIndex) return depth;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Wraps IDA* run. Sets start and target, replaces game data,
+     * and then restores it after the run. Returns the best snapshot of this run.
+     *
+     * @param start  start point.
+     * @param target target point.
+     * @param data   game data for the run.
+     * @return best snapshot of this run.
+     */
+    @Override
+    public Snapshot partialRun(Point start, Point target, GameData data) {
+        this.target = target;
+
+        if (start.equals(target)) {
+            takeSnapshot(-1, new int[0], data);
+            var snapshotCopy = currentSnapshot;
+            currentSnapshot = null;
+
+            return snapshotCopy;
+        }
+
+        var tmpGameData = gameData;
+        gameData = data;
+
+        var matrix = gameData.getMatrix();
+        var startIndex = matrix.index(start);
+        targetIndex = matrix.index(target);
+
+        if (isLosing(start) || isLosing(target) || !isReachable(startIndex, targetIndex)) {
+            gameData = tmpGameData;
+            return null;
+        }
+
+        var depth = -1;
+        for (int bound = h(startIndex); depth == -1; bound = nextBound) {
+            nextBound = Integer.MAX_VALUE;
+            depth = doRun(startIndex, bound);
+
+            // No path exceeded the bound, so the target is unreachable (or the budget is exhausted)
+            if (depth == -1 && (nextBound == Integer.MAX_VALUE || isInterrupted())) {
+                gameData = tmpGameData;
+                return null;
+            }
+        }
+
+        takeSnapshot(startIndex, Arrays.copyOfRange(cells, 1, depth + 1), gameData);
+
+        gameData = tmpGameData;
+        var snapshotCopy = currentSnapshot;
+        currentSnapshot = null;
+
+        return snapshotCopy;
+    }
+}
+
+/**
+ * Breadth-first search over a sea map with the distance fields of the landmarks. The run sweeps the map
+ * once from Jack and once from Tortuga on the initial map, and once from the chest on the map without Kraken.
+ * Then the legs of the routes (Jack - Tortuga - Kraken's weak point - chest, or Jack - chest)
+ * are chosen by the lookups in these fields, and the paths are restored from the parent pointers.
+ * The legs and their choice are the same as in <code>SearchingAlgorithm.run()</code>.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see SearchingAlgorithm
+ */
+class LandmarkSearch extends SearchingAlgorithm {
+
+    /**
+     * Distances from Jack on the initial map (-1 for unreached cells).
+     */
+    private final int[] jackDistances;
+
+    /**
+     * Parents of the cells on the paths from Jack.
+     */
+    private final int[] jackParents;
+
+    /**
+     * Distances from Tortuga on the initial map (-1 for unreached cells).
+     */
+    private final int[] tortugaDistances;
+
+    /**
+     * Parents of the cells on the paths from Tortuga.
+     */
+    private final int[] tortugaParents;
+
+    /**
+     * Distances to the chest on the map without Kraken (-1 for unreached cells).
+     */
+    private final int[] chestDistances;
+
+    /**
+     * Next cells on the paths to the chest.
+     */
+    private final int[] chestParents;
+
+    /**
+     * Queue of the sweeps.
+     */
+    private final int[] queue;
+
+    /**
+     * Moves buffer.
+     */
+    private final int[] moves = new int[8];
+
+    public LandmarkSearch(GameData gameData, int scenario) {
+        super(gameData, scenario);
+
+        var size = gameData.getMatrix().size();
+        jackDistances = new int[size];
+        jackParents = new int[size];
+        tortugaDistances = new int[size];
+        tortugaParents = new int[size];
+        chestDistances = new int[size];
+        chestParents = new int[size];
+        queue = new int[size];
+    }
+
+    @Override
+    protected SearchingAlgorithm copy() {
+        return new LandmarkSearch(gameData, scenario);
+    }
+
+    /**
+     * Sweeps the map from the source cell breadth-first. The moves are symmetric,
+     * so the field also gives the distances to the source.
+     *
+     * @param data      game data of the map.
+     * @param source    source cell index.
+     * @param stop      cell index to stop at (-1 to sweep the whole map).
+     * @param distances distances from the source.
+     * @param parents   parents of the cells.
+     */
+    private void sweep(GameData data, int source, int stop, int[] distances, int[] parents) {
+        var tmpGameData = gameData;
+        gameData = data;
+
+        Arrays.fill(distances, -1);
+        distances[source] = 0;
+        queue[0] = source;
+
+        for (int head = 0, tail = 1; head < tail; head++) {
+            var current = queue[head];
+            if (current == stop) break;
+            expansions++;
+
+            for (int i = 0, size = safeMoves(MoveKind.FIRST_SCENARIO, current, moves); i < size; i++) {
+                var next = moves[i];
+                if (distances[next] != -1) continue;
+
+                distances[next] = distances[current] + 1;
+                parents[next] = current;
+                queue[tail++] = next;
+            }
+        }
+
+        gameData = tmpGameData;
+    }
+
+    /**
+     * Writes the path from the source of the field to the cell (excluding the source).
+     *
+     * @param distances distances of the field.
+     * @param parents   parents of the field.
+     * @param cell      cell index.
+     * @param out       path buffer.
+     * @param offset    offset of the path in the buffer.
+     */
+    private static void pathFrom(int[] distances, int[] parents, int cell, int[] out, int offset) {
+        for (int i = offset + distances[cell] - 1; i >= offset; i--, cell = parents[cell])
+            out[i] = cell;
+    }
+
+    /**
+     * Writes the path from the cell to the source of the field (excluding the cell).
+     *
+     * @param distances distances of the field.
+     * @param parents   parents of the field.
+     * @param cell      cell index.
+     * @param out       path buffer.
+     * @param offset    offset of the path in the buffer.
+     */
+    private static void pathTo(int[] distances, int[] parents, int cell, int[] out, int offset) {
+        for (int i = offset, end = offset + distances[cell]; i < end; i++)
+            out[i] = cell = parents[cell];
+    }
+
+    /**
+     * Performs the run through the landmarks. Kraken's weak point is the nearest one to Tortuga
+     * (the first of them in the corners order), the route through it is dropped if it is Tortuga itself.
+     * The shorter one of the routes is chosen, the route through Kraken wins a tie.
+     *
+     * @return the best snapshot of the run.
+     */
+    @Override
+    public Snapshot run() {
+        var matrix = gameData.getMatrix();
+        var jackSparrow = matrix.index(gameData.getJackSparrow());
+        var tortuga = matrix.index(gameData.getTortuga());
+        var chest = matrix.index(gameData.getChest());
+        Snapshot combinedRun = null;
+
+        if (!matrix.isSafe(jackSparrow)) return null;
+
+        sweep(gameData, jackSparrow, -1, jackDistances, jackParents);
+
+        if (jackDistances[tortuga] != -1) {
+            sweep(gameData, tortuga, -1, tortugaDistances, tortugaParents);
+
+            var corner = -1;
+            var kraken = matrix.index(gameData.getKraken());
+
+            for (int i = 0, size = safeMoves(MoveKind.CORNERS, kraken, moves); i < size; i++)
+                if (tortugaDistances[moves[i]] != -1
+                        && (corner == -1 || tortugaDistances[moves[i]] < tortugaDistances[corner]))
+                    corner = moves[i];
+
+            if (corner != -1 && tortugaDistances[corner] != 0) {
+                var krakenFreeData = gameData.clone();
+                krakenFreeData.tryRemoveKraken();
+                sweep(krakenFreeData, chest, -1, chestDistances, chestParents);
+
+                if (chestDistances[corner] != -1) {
+                    var krakenOffset = jackDistances[tortuga];
+                    var chestOffset = krakenOffset + tortugaDistances[corner];
+                    var combinedPath = new int[chestOffset + chestDistances[corner]];
+
+                    pathFrom(jackDistances, jackParents, tortuga, combinedPath, 0);
+                    pathFrom(tortugaDistances, tortugaParents, corner, combinedPath, krakenOffset);
+                    pathTo(chestDistances, chestParents, corner, combinedPath, chestOffset);
+
+                    takeSnapshot(jackSparrow, combinedPath, krakenFreeData);
+                    combinedRun = currentSnapshot;
+                    currentSnapshot = null;
+                }
+            }
+        }
+
+        if (jackDistances[chest] == -1 || combinedRun != null && combinedRun.length() <= jackDistances[chest])
+            return combinedRun;
+
+        var immediatePath = new int[jackDistances[chest]];
+        pathFrom(jackDistances, jackParents, chest, immediatePath, 0);
+        takeSnapshot(jackSparrow, immediatePath, gameData);
+
+        var snapshotCopy = currentSnapshot;
+        currentSnapshot = null;
+
+        return snapshotCopy;
+    }
+
+    /**
+     * Performs a breadth-first search from start to target, stops when the target is reached.
+     *
+     * @param start  start point.
+     * @param target target point.
+     * @param data   game data for the run.
+     * @return best snapshot of this run.
+     */
+    @Override
+    public Snapshot partialRun(Point start, Point target, GameData data) {
+        this.target = target;
+
+        if (start.equals(target)) {
+            takeSnapshot(-1, new int[0], data);
+            var snapshotCopy = currentSnapshot;
+            currentSnapshot = null;
+
+            return snapshotCopy;
+        }
+
+        var matrix = data.getMatrix();
+        var startIndex = matrix.index(start);
+        var targetIndex = matrix.index(target);
+
+        if (!matrix.isSafe(startIndex)) return null;
+
+        sweep(data, startIndex, targetIndex, jackDistances, jackParents);
+        if (jackDistances[targetIndex] == -1) return null;
+
+        var path = new int[jackDistances[targetIndex]];
+        pathFrom(jackDistances, jackParents, targetIndex, path, 0);
+        takeSnapshot(startIndex, path, data);
+
+        var snapshotCopy = currentSnapshot;
+        currentSnapshot = null;
+
+        return snapshotCopy;
+    }
+}
+
+/**
+ * Breadth-first search over the states of the game: the cell, whether Tortuga is visited,
+ * and whether Kraken is killed. Jack visits Tortuga by stepping on it, and kills Kraken by stepping
+ * on its weak point (corner) after Tortuga, the moves after that are checked against the map without Kraken.
+ * So the route through Kraken is chosen together with its weak point, and the result is globally optimal.
+ * The run is a single search, the map without Kraken is built once per run.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see SearchingAlgorithm
+ * @see LandmarkSearch
+ */
+class StateSpaceSearch extends SearchingAlgorithm {
+
+    /**
+     * Layer of the states before Tortuga.
+     */
+    private static final int SAILING = 0;
+
+    /**
+     * Layer of the states after Tortuga.
+     */
+    private static final int ARMED = 1;
+
+    /**
+     * Layer of the states after Kraken is killed.
+     */
+    private static final int KRAKEN_DEAD = 2;
+
+    /**
+     * Distances of the states indexed by <code>layer * size + cell</code> (-1 for unreached states).
+     */
+    private final int[] distances;
+
+    /**
+     * Parent states.
+     */
+    private final int[] parents;
+
+    /**
+     * Queue of the states.
+     */
+    private final int[] queue;
+
+    /**
+     * Kraken's weak points.
+     */
+    private final int[] corners = new int[4];
+
+    /**
+     * Number of Kraken's weak points.
+     */
+    private int cornersCount;
+
+    /**
+     * Tortuga cell index (-1 if the layers are not used).
+     */
+    private int tortuga;
+
+    public StateSpaceSearch(GameData gameData, int scenario) {
+        super(gameData, scenario);
+
+        var size = gameData.getMatrix().size();
+        distances = new int[3 * size];
+        parents = new int[3 * size];
+        queue = new int[3 * size];
+    }
+
+    @Override
+    protected SearchingAlgorithm copy() {
+        return new StateSpaceSearch(gameData, scenario);
+    }
+
+    /**
+     * Returns the layer of Jack after he steps on the cell.
+     *
+     * @param layer layer before the step.
+     * @param cell  cell index.
+     * @return layer after the step.
+     */
+    private int layer(int layer, int cell) {
+        if (layer == SAILING && cell == tortuga) layer = ARMED;
+
+        if (layer == ARMED)
+            for (int i = 0; i < cornersCount; i++)
+                if (corners[i] == cell) return KRAKEN_DEAD;
+
+        return layer;
+    }
+
+    /**
+     * Performs the search from the start cell to the target cell. The moves of the states
+     * before Kraken is killed are checked against the initial map, the others against the map without Kraken.
+     *
+     * @param start   start cell index.
+     * @param target  target cell index.
+     * @param initial initial map.
+     * @param killed  map without Kraken.
+     * @return reached target state, -1 if the target is unreachable.
+     */
+    private int search(int start, int target, Matrix initial, Matrix killed) {
+        var size = initial.size();
+        var adjacency = initial.getAdjacency();
+
+        Arrays.fill(distances, -1);
+        var first = layer(SAILING, start) * size + start;
+        distances[first] = 0;
+        queue[0] = first;
+
+        for (int head = 0, tail = 1; head < tail; head++) {
+            var state = queue[head];
+            var layer = state / size;
+            var cell = state % size;
+
+            if (cell == target) return state;
+            expansions++;
+
+            var matrix = layer == KRAKEN_DEAD ? killed : initial;
+            var cls = adjacency.cellClass(cell);
+
+            for (int k = adjacency.begin(MoveKind.FIRST_SCENARIO, cls),
+                 end = adjacency.end(MoveKind.FIRST_SCENARIO, cls); k < end; k++) {
+                var next = cell + adjacency.offset(k);
+                if (!matrix.isSafe(next)) continue;
+
+                var nextState = layer(layer, next) * size + next;
+                if (distances[nextState] != -1) continue;
+
+                distances[nextState] = distances[state] + 1;
+                parents[nextState] = state;
+                queue[tail++] = nextState;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Restores the path to the state (excluding the start).
+     *
+     * @param state reached state.
+     * @return path cell indices.
+     */
+    private int[] path(int state) {
+        var size = gameData.getMatrix().size();
+        var path = new int[distances[state]];
+
+        for (int i = path.length - 1; i >= 0; i--, state = parents[state])
+            path[i] = state % size;
+
+        return path;
+    }
+
+    /**
+     * Performs the single search through all the layers from Jack to the chest.
+     *
+     * @return the best snapshot of the run.
+     */
+    @Override
+    public Snapshot run() {
+        var matrix = gameData.getMatrix();
+        var jackSparrow = matrix.index(gameData.getJackSparrow());
+        if (!matrix.isSafe(jackSparrow)) return null;
+
+        var killedGameData = gameData.clone();
+        killedGameData.tryRemoveKraken();
+
+        tortuga = matrix.index(gameData.getTortuga());
+        cornersCount = 0;
+        matrix.corners(gameData.getKraken().getX(), gameData.getKraken().getY())
+                .forEach(p -> corners[cornersCount++] = matrix.index(p));
+
+        var state = search(jackSparrow, matrix.index(gameData.getChest()), matrix, killedGameData.getMatrix());
+        if (state == -1) return null;
+
+        var data = state / matrix.size() == KRAKEN_DEAD ? killedGameData : gameData;
+        takeSnapshot(jackSparrow, path(state), data);
+
+        var snapshotCopy = currentSnapshot;
+        currentSnapshot = null;
+
+        return snapshotCopy;
+    }
+
+    /**
+     * Performs a breadth-first search from start to target on the given map without the layers.
+     *
+     * @param start  start point.
+     * @param target target point.
+     * @param data   game data for the run.
+     * @return best snapshot of this run.
+     */
+    @Override
+    public Snapshot partialRun(Point start, Point target, GameData data) {
+        this.target = target;
+
+        if (start.equals(target)) {
+            takeSnapshot(-1, new int[0], data);
+            var snapshotCopy = currentSnapshot;
+            currentSnapshot = null;
+
+            return snapshotCopy;
+        }
+
+        var matrix = data.getMatrix();
+        var startIndex = matrix.index(start);
+        if (!matrix.isSafe(startIndex)) return null;
+
+        tortuga = -1;
+        cornersCount = 0;
+
+        var state = search(startIndex, matrix.index(target), matrix, matrix);
+        if (state == -1) return null;
+
+        takeSnapshot(startIndex, path(state), data);
+
+        var snapshotCopy = currentSnapshot;
+        currentSnapshot = null;
+
+        return snapshotCopy;
+    }
+}
+
+/**
+ * Lifelong Planning A* over a sea map. Keeps the search tree (g-values and one-step lookaheads)
+ * of the last start and target between the runs. When the next run has the same start and target,
+ * only the cells which safety changed since the last run (e.g. Kraken and its perception after
+ * <code>GameData.tryRemoveKraken()</code>, or a new enemy) are updated, and the search repairs
+ * only the affected part of the tree. Other runs start from scratch. The legs of <code>run()</code>
+ * differ in the start or the target, so they never reuse the tree, only the replanning callers do.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see AStar
+ * @see SearchingAlgorithm
+ */
+class LifelongPlanningAStar extends SearchingAlgorithm {
+
+    /**
+     * Cost of an unreachable cell.
+     */
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    /**
+     * G costs - lengths of the found paths from <code>start</code> to the nodes.
+     */
+    private final int[] gCosts;
+
+    /**
+     * One-step lookaheads of the g costs: <code>min(gCosts[neighbor] + 1)</code> over the safe neighbors.
+     */
+    private final int[] lookaheads;
+
+    /**
+     * Queue for locally inconsistent nodes (<code>gCosts[node] != lookaheads[node]</code>).
+     */
+    private final IndexedHeap open;
+
+    /**
+     * Moves buffer of the lookaheads.
+     */
+    private final int[] moves = new int[8];
+
+    /**
+     * Moves buffer of the expanded nodes.
+     */
+    private final int[] neighbors = new int[8];
+
+    /**
+     * Multiplier of the first part of the keys. The second part is less than it.
+     */
+    private final int keyScale;
+
+    /**
+     * Safe cells of the map of the last run (null if there is no search tree).
+     */
+    private BitBoard safe;
+
+    /**
+     * Start node of the search tree.
+     */
+    private int startIndex = -1;
+
+    /**
+     * Target node of the search tree.
+     */
+    private int targetIndex = -1;
+
+    public LifelongPlanningAStar(GameData gameData, int scenario) {
+        super(gameData, scenario);
+
+        var matrix = gameData.getMatrix();
+        keyScale = Math.max(matrix.getWidth(), matrix.getHeight());
+
+        // The costs do not exceed the map size and h is less than the scale, so the keys are less than it
+        gCosts = new int[matrix.size()];
+        lookaheads = new int[matrix.size()];
+        open = new IndexedHeap(matrix.size(), (long) (matrix.size() + keyScale) * keyScale);
+    }
+
+    @Override
+    protected SearchingAlgorithm copy() {
+        return new LifelongPlanningAStar(gameData, scenario);
+    }
+
+    /**
+     * Returns the heuristic <code>h = max(abs(x - target.x), abs(y - target.y))</code> of the node.
+     *
+     * @param node node.
+     * @return heuristic value.
+     */
+    private int h(int node) {
+        var width = gameData.getMatrix().getWidth();
+        return Math.max(Math.abs(node % width - target.getX()), Math.abs(node / width - target.getY()));
+    }
+
+    /**
+     * Returns the key of the node: <code>min(g, rhs) + h</code>, the ties are broken
+     * by the least <code>min(g, rhs)</code> (i.e. the greatest h). Unreachable nodes have the greatest key.
+     *
+     * @param node node.
+     * @return key.
+     */
+    private long key(int node) {
+        var cost = Math.min(gCosts[node], lookaheads[node]);
+        if (cost >= INFINITY) return Long.MAX_VALUE;
+
+        var h = h(node);
+        return (long) (cost + h) * keyScale + keyScale - 1 - h;
+    }
+
+    /**
+     * Recomputes the lookahead of the node and queues the node if it is locally inconsistent.
+     *
+     * @param node node.
+     */
+    private void updateNode(int node) {
+        var matrix = gameData.getMatrix();
+
+        if (node != startIndex) {
+            var lookahead = INFINITY;
+
+            if (matrix.isSafe(node))
+                for (int i = 0, size = safeMoves(MoveKind.FIRST_SCENARIO, node, moves); i < size; i++)
+                    lookahead = Math.min(lookahead, gCosts[moves[i]] + 1);
+
+            lookaheads[node] = lookahead;
+        }
+
+        if (gCosts[node] == lookaheads[node]) {
+            if (open.contains(node)) open.remove(node);
+        } else if (open.contains(node)) open.update(node, key(node));
+        else open.offer(node, key(node));
+    }
+
+    /**
+     * Updates the node and its neighbors after the change of its safety.
+     *
+     * @param node node.
+     */
+    private void updateCell(int node) {
+        var matrix = gameData.getMatrix();
+        var adjacency = matrix.getAdjacency();
+        var cls = adjacency.cellClass(node);
+
+        updateNode(node);
+        for (int k = adjacency.begin(MoveKind.FIRST_SCENARIO, cls),
+             end = adjacency.end(MoveKind.FIRST_SCENARIO, cls); k < end; k++)
+            updateNode(node + adjacency.offset(k));
+    }
+
+    /**
+     * Core Lifelong Planning A* algorithm. Makes the nodes consistent in the order of their keys
+     * until the target is consistent and no queued node has a less key.
+     */
+    private void doRun() {
+        while (!open.isEmpty() && (open.longScore(open.peek()) < key(targetIndex)
+                || gCosts[targetIndex] != lookaheads[targetIndex])) {
+            var current = open.poll();
+            expansions++;
+
+            if (gCosts[current] > lookaheads[current]) gCosts[current] = lookaheads[current];
+            else {
+                gCosts[current] = INFINITY;
+                updateNode(current);
+            }
+
+            for (int i = 0, size = safeMoves(MoveKind.FIRST_SCENARIO, current, neighbors); i < size; i++)
+                updateNode(neighbors[i]);
+        }
+    }
+
+    /**
+     * Restores the path from the start to the target: each node is preceded by its neighbor
+     * with the least g cost.
+     *
+     * @return path cell indices excluding the start.
+     */
+    private int[] path() {
+        var path = new int[gCosts[targetIndex]];
+        var node = targetIndex;
+
+        for (int i = path.length - 1; i >= 0; i--) {
+            path[i] = node;
+
+            var parent = -1;
+            for (int j = 0, size = safeMoves(MoveKind.FIRST_SCENARIO, node, moves); j < size; j++)
+                if (parent == -1 || gCosts[moves[j]] < gCosts[parent]) parent = moves[j];
+
+            node = parent;
+        }
+
+        return path;
+    }
+
+    /**
+     * Wraps Lifelong Planning A* run. Sets start and target, replaces game data,
+     * and then restores it after the run. Reuses the search tree if the start and the target are the same
+     * as in the last run. Returns the best snapshot of this run.
+     *
+     * @param start  start point.
+     * @param target target point.
+     * @param data   game data for the run.
+     * @return best snapshot of this run.
+     */
+    @Override
+    public Snapshot partialRun(Point start, Point target, GameData data) {
+        this.target = target;
+
+        if (start.equals(target)) {
+            takeSnapshot(-1, new int[0], data);
+            var snapshotCopy = currentSnapshot;
+            currentSnapshot = null;
+
+            return snapshotCopy;
+        }
+
+        var tmpGameData = gameData;
+        gameData = data;
+
+        var matrix = gameData.getMatrix();
+        var newStart = matrix.index(start);
+        var newTarget = matrix.index(target);
+
+        if (safe != null && newStart == startIndex && newTarget == targetIndex)
+            safe.forEachDifference(matrix.getSafe(), this::updateCell);
+        else {
+            startIndex = newStart;
+            targetIndex = newTarget;
+
+            open.clear();
+            Arrays.fill(gCosts, INFINITY);
+            Arrays.fill(lookaheads, INFINITY);
+            lookaheads[startIndex] = 0;
+            open.offer(startIndex, key(startIndex));
+        }
+
+        // The tree stays valid for the next run even if the start is dangerous now
+        safe = matrix.getSafe();
+
+        if (isLosing(start)) {
+            gameData = tmpGameData;
+            return null;
+        }
+
+        doRun();
+
+        if (gCosts[targetIndex] >= INFINITY) {
+            gameData = tmpGameData;
+            return null;
+        }
+
+        takeSnapshot(startIndex, path(), gameData);
+
+        gameData = tmpGameData;
+        var snapshotCopy = currentSnapshot;
+        currentSnapshot = null;
+
+        return snapshotCopy;
+    }
+}
+
+/**
+ * Memory-mapped sea map file. The whole file is mapped once and read-only, so the startup
+ * does not parse the input or allocate the cells, and several processes share the same pages.
+ * <p>
+ * Layout (little-endian):
+ * <ol>
+ *     <li>header (16 ints): magic, version, width, height, and (x, y) of Jack Sparrow, Davy Jones,
+ *     Kraken, Rock, chest, and Tortuga (-1 if absent, such files are rejected by <code>map</code>)</li>
+ *     <li>cell codes: one byte per cell</li>
+ *     <li>perception numbers: one byte per cell, padded to 8 bytes</li>
+ *     <li>safe, hazard, and entity layers: <code>BitBoard.words(width, height)</code> longs each</li>
+ * </ol>
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see MappedCellStore
+ * @see BitBoard
+ * @see GameData
+ */
+class MapFile {
+
+    /**
+     * File magic ("IAIM").
+     */
+    private static final int MAGIC = 0x4941494D;
+
+    /**
+     * File format version.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Header size in bytes.
+     */
+    private static final int HEADER_SIZE = 16 * Integer.BYTES;
+
+    /**
+     * Maximum perception number of a cell (Davy Jones and Kraken).
+     */
+    private static final int MAX_PERCEPTION = 2;
+
+    /**
+     * Returns the offset of the layers in bytes.
+     *
+     * @param cells number of the cells.
+     * @return offset of the layers.
+     */
+    private static long layersOffset(long cells) {
+        return (HEADER_SIZE + 2 * cells + 7) & ~7L;
+    }
+
+    /**
+     * Returns the file size in bytes.
+     *
+     * @param width  map width.
+     * @param height map height.
+     * @return file size.
+     */
+    private static long fileSize(int width, int height) {
+        return layersOffset((long) width * height) + 3L * Long.BYTES * BitBoard.words(width, height);
+    }
+
+    /**
+     * Writes an entity point to the header.
+     *
+     * @param buffer file buffer.
+     * @param point  nullable entity point.
+     */
+    private static void putPoint(ByteBuffer buffer, Point point) {
+        buffer.putInt(point == null ? -1 : point.getX());
+        buffer.putInt(point == null ? -1 : point.getY());
+    }
+
+    /**
+     * Reads an entity point from the header.
+     *
+     * @param buffer file buffer.
+     * @param width  map width.
+     * @param height map height.
+     * @return entity point.
+     * @throws IOException if the entity is absent or outside the map.
+     */
+    private static Point getPoint(ByteBuffer buffer, int width, int height) throws IOException {
+        var x = buffer.getInt();
+        var y = buffer.getInt();
+
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            throw new IOException("Invalid map file entities");
+
+        return new Point(x, y);
+    }
+
+    /**
+     * Checks the cell codes and the perception numbers, so a corrupt byte is rejected by <code>map</code>
+     * instead of failing in the lookup tables of <code>CellCodes</code> during a run.
+     *
+     * @param buffer file buffer.
+     * @param cells  number of the cells.
+     * @throws IOException if a code or a perception number is out of its range.
+     */
+    private static void checkCells(ByteBuffer buffer, int cells) throws IOException {
+        for (int i = 0; i < cells; i++) {
+            var code = buffer.get(HEADER_SIZE + i);
+            var perception = buffer.get(HEADER_SIZE + cells + i);
+
+            if (code < 0 || code >= CellCodes.CELLS.length || perception < 0 || perception > MAX_PERCEPTION)
+                throw new IOException("Invalid map file cells");
+        }
+    }
+
+    /**
+     * Writes the layer longs.
+     *
+     * @param buffer file buffer.
+     * @param layer  layer.
+     */
+    private static void putLayer(ByteBuffer buffer, BitBoard layer) {
+        for (int i = 0, words = BitBoard.words(layer.getWidth(), layer.getHeight()); i < words; i++)
+            buffer.putLong(layer.word(i));
+    }
+
+    /**
+     * Maps the layer longs.
+     *
+     * @param buffer file buffer.
+     * @param offset layer offset in bytes.
+     * @param width  map width.
+     * @param height map height.
+     * @return layer over the mapped longs.
+     */
+    private static BitBoard mapLayer(ByteBuffer buffer, long offset, int width, int height) {
+        var words = BitBoard.words(width, height);
+        var longs = buffer.slice((int) offset, words * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        return new BitBoard(width, height, longs);
+    }
+
+    /**
+     * Writes the game data to the map file.
+     *
+     * @param data game data.
+     * @param path map file path.
+     * @throws IOException if the map is too large to be mapped, or default cases of IOException.
+     */
+    public static void write(GameData data, Path path) throws IOException {
+        var matrix = data.getMatrix();
+        var size = fileSize(matrix.getWidth(), matrix.getHeight());
+
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Map is too large to be mapped");
+
+        try (var channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE
+        )) {
+            var mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            var buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(matrix.getWidth()).putInt(matrix.getHeight());
+            putPoint(buffer, data.getJackSparrow());
+            putPoint(buffer, data.getDavyJones());
+            putPoint(buffer, data.getKraken());
+            putPoint(buffer, data.getRock());
+            putPoint(buffer, data.getChest());
+            putPoint(buffer, data.getTortuga());
+
+            for (int i = 0; i < matrix.size(); i++)
+                buffer.put(matrix.getCode(i));
+
+            for (int i = 0; i < matrix.size(); i++)
+                buffer.put((byte) matrix.getPerception(i));
+
+            buffer.position((int) layersOffset(matrix.size()));
+            putLayer(buffer, matrix.getSafe());
+            putLayer(buffer, matrix.getHazard());
+            putLayer(buffer, matrix.getEntity());
+
+            mapped.force();
+        }
+    }
+
+    /**
+     * Maps the map file read-only. The resulting game data must not be mutated, its clones
+     * read the mapping and copy the written pages to the heap.
+     *
+     * @param path map file path.
+     * @return game data over the mapped file.
+     * @throws IOException if the file is not a valid map file, or default cases of IOException.
+     */
+    public static GameData map(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Invalid map file size");
+
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                throw new IOException("Invalid map file header");
+
+            var width = buffer.getInt();
+            var height = buffer.getInt();
+
+            if (width <= 0 || height <= 0 || fileSize(width, height) != channel.size())
+                throw new IOException("Invalid map file size");
+
+            var jackSparrow = getPoint(buffer, width, height);
+            var davyJones = getPoint(buffer, width, height);
+            var kraken = getPoint(buffer, width, height);
+            var rock = getPoint(buffer, width, height);
+            var chest = getPoint(buffer, width, height);
+            var tortuga = getPoint(buffer, width, height);
+
+            var cellsCount = width * height;
+            checkCells(buffer, cellsCount);
+
+            var layersOffset = layersOffset(cellsCount);
+            var layerSize = (long) Long.BYTES * BitBoard.words(width, height);
+
+            var matrix = new Matrix(
+                    width, height,
+                    new MappedCellStore(buffer.slice(HEADER_SIZE, cellsCount)),
+                    new MappedCellStore(buffer.slice(HEADER_SIZE + cellsCount, cellsCount)),
+                    mapLayer(buffer, layersOffset, width, height),
+                    mapLayer(buffer, layersOffset + layerSize, width, height),
+                    mapLayer(buffer, layersOffset + 2 * layerSize, width, height)
+            );
+
+            return new GameData(matrix, jackSparrow, davyJones, kraken, rock, chest, tortuga);
+        }
+    }
+}
+
+/**
+ * Input helper utility class.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see GameData
+ * @see AStar
+ */
+class InputHelper {
+
+    /**
+     * Input file path.
+     */
+    public static final Path INPUT = Path.of("input.txt");
+
+    /**
+     * List of spawn points used in GameData.
+     *
+     * @see GameData
+     */
+    private static List<Point> points;
+
+    /**
+     * Game scenario. Used in AStar.
+     *
+     * @see AStar
+     */
+    private static int scenario;
+
+    /**
+     * Map width. 9 for default.
+     */
+    private static int width = Matrix.DEFAULT_SIZE;
+
+    /**
+     * Map height. 9 for default.
+     */
+    private static int height = Matrix.DEFAULT_SIZE;
+
+    /**
+     * Parses the single map of the input.
+     *
+     * @param parser input parser.
+     * @throws IOException if the input is not a single valid map.
+     */
+    private static void parseInput(InputParser parser) throws IOException {
+        if (!parser.next())
+            throw new IOException("Number of input lines is not equal to 2");
+        if (parser.getError() != null)
+            throw new IOException(parser.getError());
+
+        points = parser.points();
+        scenario = parser.getScenario();
+
+        if (parser.next())
+            throw new IOException("Number of input lines is not equal to 2");
+    }
+
+    /**
+     * Tries to init and parse the reading streams. Accepts input from console and the file.
+     *
+     * @throws IOException if it can't open the streams, given invalid input data, or
+     *                     user selected invalid input way.
+     */
+    public static void tryInitAndParse() throws IOException {
+        try (var reader = new BufferedReader(new InputStreamReader(System.in))) {
+            System.out.println("Choose the input source:\n[1] File\n[2] Console\nType number:");
+
+            switch (Integer.parseInt(reader.readLine())) {
+                case 1 -> {
+                    try (var channel = FileChannel.open(INPUT)) {
+                        parseInput(new InputParser(channel, width, height));
+                    }
+                }
+                case 2 -> {
+                    System.out.println("Enter the data:");
+                    parseInput(InputParser.of(reader.readLine() + "\n" + reader.readLine(), width, height));
+                }
+                default -> throw new IOException("Invalid number!");
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Can't parse the given string to an integer");
+        }
+    }
+
+    /**
+     * Indicates if the string has the shape of a map size, i.e. <code>WIDTHxHEIGHT</code>.
+     *
+     * @param size string.
+     * @return true if the string looks like a map size, false otherwise.
+     */
+    static boolean isSize(String size) {
+        return size.matches("\\d+x\\d+");
+    }
+
+    /**
+     * Parses and sets the map size given as <code>WIDTHxHEIGHT</code> (e.g. <code>4096x4096</code>).
+     *
+     * @param size map size string.
+     * @throws IOException if the size is invalid.
+     */
+    static void parseSize(String size) throws IOException {
+        if (!isSize(size))
+            throw new IOException("Invalid map size");
+
+        try {
+            var split = size.split("x");
+            width = Integer.parseInt(split[0]);
+            height = Integer.parseInt(split[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid map size");
+        }
+
+        if (width == 0 || height == 0 || (long) width * height > Integer.MAX_VALUE)
+            throw new IOException("Invalid map size");
+    }
+
+    static List<Point> getPoints() {
+        return points;
+    }
+
+    static int getWidth() {
+        return width;
+    }
+
+    static int getHeight() {
+        return height;
+    }
+
+    static int getScenario() {
+        return scenario;
+    }
+}
+
+/**
+ * Streaming byte-level parser of the maps in the <code>input.txt</code> format: the positions line
+ * (<code>[x,y]</code> of Jack Sparrow, Davy Jones, Kraken, Rock, chest, and Tortuga) and the scenario line,
+ * repeated; the blank lines are skipped. The coordinates are decoded from the bytes straight into
+ * primitive arrays, and one byte array is reused for the whole input, so the parser does not allocate per map
+ * and reads an input of any size at the speed of the channel.
+ * <p>
+ * Accepts the same maps as the former regular expressions: the whitespace-separated tokens which are not
+ * exactly <code>[digits,digits]</code> are ignored, the points outside the map are dropped, and exactly 6 points
+ * must remain. The scenario line is an integer in the <code>Integer.parseInt</code> format, 1 or 2.
+ * An invalid map is consumed entirely and its first error is reported with the line and column (from 1).
+ * A wrong number of points is reported at the first ignored or dropped token, or at the first extra point.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see InputHelper
+ * @see BatchSolver
+ */
+class InputParser {
 
-            for (var n : moves(current)) {
-                if (!open.contains(n)) {
-                    n.gCost = current.gCost + 1;
-                    n.parent = current;
-                    open.offer(n);
-                } else {
-                    if (current.gCost + 1 < n.gCost) {
-                        n.gCost = current.gCost + 1;
-                        n.parent = current;
-                    }
-                }
+    /**
+     * Number of the points of a map.
+     */
+    public static final int POINTS = 6;
+
+    /**
+     * Default buffer capacity.
+     */
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * End of the input.
+     */
+    private static final int EOF = -1;
+
+    /**
+     * Value of the numbers which do not fit into int.
+     */
+    private static final long OVERFLOW = Integer.MAX_VALUE + 1L;
+
+    /**
+     * Input channel (null if the input is a buffer or a text).
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * Input buffer (null if the input is a channel or a text).
+     */
+    private final ByteBuffer source;
+
+    /**
+     * Bytes of the input window.
+     */
+    private final byte[] bytes;
+
+    /**
+     * View of the bytes for the channel reads.
+     */
+    private final ByteBuffer window;
+
+    /**
+     * Index of the next byte of the window.
+     */
+    private int position;
+
+    /**
+     * Number of the bytes of the window.
+     */
+    private int limit;
+
+    /**
+     * Offset of the window in the input.
+     */
+    private long offset;
+
+    /**
+     * Map width.
+     */
+    private final int width;
+
+    /**
+     * Map height.
+     */
+    private final int height;
+
+    /**
+     * X-coordinates of the points of the last map.
+     */
+    private final int[] xs = new int[POINTS];
+
+    /**
+     * Y-coordinates of the points of the last map.
+     */
+    private final int[] ys = new int[POINTS];
+
+    /**
+     * Scenario of the last map.
+     */
+    private int scenario;
+
+    /**
+     * First error of the last map (null if it is valid).
+     */
+    private String error;
+
+    /**
+     * Current line number (from 1).
+     */
+    private long line = 1;
+
+    /**
+     * Offset of the current line in the input.
+     */
+    private long lineOffset;
+
+    /**
+     * Initialization over a blocking channel with the buffer of the default capacity.
+     *
+     * @param channel input channel.
+     * @param width   map width.
+     * @param height  map height.
+     */
+    public InputParser(ReadableByteChannel channel, int width, int height) {
+        this(channel, BUFFER_SIZE, width, height);
+    }
+
+    /**
+     * Initialization over a blocking channel.
+     *
+     * @param channel    input channel.
+     * @param bufferSize buffer capacity.
+     * @param width      map width.
+     * @param height     map height.
+     */
+    public InputParser(ReadableByteChannel channel, int bufferSize, int width, int height) {
+        this(channel, null, new byte[bufferSize], 0, width, height);
+    }
+
+    /**
+     * Initialization over the whole input (e.g. a memory-mapped file).
+     *
+     * @param buffer input buffer, in the read mode.
+     * @param width  map width.
+     * @param height map height.
+     */
+    public InputParser(ByteBuffer buffer, int width, int height) {
+        this(null, buffer, new byte[Math.min(buffer.remaining(), BUFFER_SIZE)], 0, width, height);
+    }
+
+    private InputParser(ReadableByteChannel channel, ByteBuffer source, byte[] bytes, int limit, int width,
+                        int height) {
+        this.channel = channel;
+        this.source = source;
+        this.bytes = bytes;
+        this.window = ByteBuffer.wrap(bytes);
+        this.limit = limit;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the parser of the given text.
+     *
+     * @param text   input text.
+     * @param width  map width.
+     * @param height map height.
+     * @return parser of the text.
+     */
+    public static InputParser of(String text, int width, int height) {
+        var bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return new InputParser(null, null, bytes, bytes.length, width, height);
+    }
+
+    /**
+     * Parses the next map. The map is available by the getters, or its error is set.
+     *
+     * @return true if there is the next map, false at the end of the input.
+     * @throws IOException if it can't read the channel.
+     */
+    public boolean next() throws IOException {
+        error = null;
+        if (!skipBlankLines()) return false;
+
+        var positionsLine = line;
+        readPoints();
+
+        if (!skipBlankLines()) fail(String.format("Missing scenario line after line %d", positionsLine));
+        else readScenario();
+
+        return true;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public int getScenario() {
+        return scenario;
+    }
 
-                closed.add(n);
+    public int getX(int i) {
+        return xs[i];
+    }
+
+    public int getY(int i) {
+        return ys[i];
+    }
+
+    /**
+     * Returns the points of the last map in the order of the input.
+     *
+     * @return list of the spawn points.
+     */
+    public List<Point> points() {
+        var points = new ArrayList<Point>(POINTS);
+        for (int i = 0; i < POINTS; i++)
+            points.add(new Point(xs[i], ys[i]));
+
+        return points;
+    }
+
+    /**
+     * Reads the positions line.
+     *
+     * @throws IOException if it can't read the channel.
+     */
+    private void readPoints() throws IOException {
+        var positionsLine = line;
+        var count = 0;
+
+        // Column of the first ignored or dropped token, and of the first extra point
+        var droppedColumn = 0;
+        var extraColumn = 0;
+
+        for (var c = peek(); !isLineEnd(c); c = peek()) {
+            if (isSpace(c)) {
+                read();
+                continue;
             }
 
-            if (scenario == 2)
-                for (var n : secondScenarioMoves(current)) {
-                    if (!open.contains(n))
-                        n.gCost = current.gCost + 2;
-                    else if (current.gCost + 2 < n.gCost)
-                        n.gCost = current.gCost + 2;
-                }
+            var tokenColumn = column() + 1;
+            var x = tryRead('[') ? readDigits() : -1;
+            var y = x >= 0 && tryRead(',') ? readDigits() : -1;
+
+            if (y < 0 || !tryRead(']') || !isSpace(peek()) && !isLineEnd(peek())) {
+                skipToken();
+                if (droppedColumn == 0) droppedColumn = tokenColumn;
+            } else if (x == OVERFLOW || y == OVERFLOW)
+                fail(String.format("Invalid positions at line %d, column %d", positionsLine, tokenColumn));
+            else if (x >= width || y >= height) {
+                if (droppedColumn == 0) droppedColumn = tokenColumn;
+            } else {
+                if (count < POINTS) {
+                    xs[count] = (int) x;
+                    ys[count] = (int) y;
+                } else if (extraColumn == 0) extraColumn = tokenColumn;
+
+                count++;
+            }
+        }
+
+        endLine();
+
+        var countColumn = count > POINTS ? extraColumn : droppedColumn;
+        if (count != POINTS && countColumn != 0)
+            fail(String.format("Invalid positions at line %d, column %d: %d points instead of %d",
+                    positionsLine, countColumn, count, POINTS));
+        else if (count != POINTS)
+            fail(String.format("Invalid positions at line %d: %d points instead of %d", positionsLine, count, POINTS));
+    }
+
+    /**
+     * Reads the scenario line.
+     *
+     * @throws IOException if it can't read the channel.
+     */
+    private void readScenario() throws IOException {
+        var scenarioLine = line;
+
+        // The leading whitespace is skipped, but it is not a part of an integer
+        var errorColumn = column() > 0 ? 1 : 0;
+        var startColumn = column() + 1;
+
+        var negative = peek() == '-';
+        if (!tryRead('+')) tryRead('-');
+
+        var value = readDigits();
+        if (errorColumn == 0 && (value < 0 || !isLineEnd(peek()))) errorColumn = column() + 1;
+        if (errorColumn == 0 && (negative || value != 1 && value != 2)) errorColumn = startColumn;
+
+        while (!isLineEnd(peek()))
+            read();
+        endLine();
+
+        if (errorColumn != 0)
+            fail(String.format("Invalid scenario at line %d, column %d", scenarioLine, errorColumn));
+        else scenario = (int) value;
+    }
 
-            closed.add(current);
+    /**
+     * Reads the decimal digits.
+     *
+     * @return value of the digits (<code>OVERFLOW</code> if it does not fit into int), -1 if there are no digits.
+     * @throws IOException if it can't read the channel.
+     */
+    private long readDigits() throws IOException {
+        if (!isDigit(peek())) return -1;
+
+        var value = 0L;
+        while (isDigit(peek()))
+            value = Math.min(value * 10 + read() - '0', OVERFLOW);
+
+        return value;
+    }
+
+    /**
+     * Skips the blank lines and the leading whitespace of the next line.
+     *
+     * @return true if there is a non-blank line, false at the end of the input.
+     * @throws IOException if it can't read the channel.
+     */
+    private boolean skipBlankLines() throws IOException {
+        while (true) {
+            while (isSpace(peek()))
+                read();
+
+            var c = peek();
+            if (c == EOF) return false;
+            if (!isLineEnd(c)) return true;
+
+            endLine();
         }
     }
 
-    public AStar(GameData gameData, int scenario) {
-        super(gameData, scenario);
+    /**
+     * Skips the rest of the token.
+     *
+     * @throws IOException if it can't read the channel.
+     */
+    private void skipToken() throws IOException {
+        for (var c = peek(); !isSpace(c) && !isLineEnd(c); c = peek())
+            read();
+    }
 
-        for (int i = 0; i < 9; i++)
-            nodes[i] = new Node[9];
+    /**
+     * Reads the line terminator (<code>\n</code>, <code>\r</code>, or <code>\r\n</code>) if any.
+     *
+     * @throws IOException if it can't read the channel.
+     */
+    private void endLine() throws IOException {
+        var c = read();
+        if (c == EOF) return;
+        if (c == '\r' && peek() == '\n') read();
 
-        // Initialization of empty nodes matrix
-        for (int y = 0; y < 9; y++)
-            for (int x = 0; x < 9; x++)
-                if (gameData.getMatrix().getPoint(x, y).isPresent())
-                    nodes[x][y] = new Node(gameData.getMatrix().getPoint(x, y).get());
+        line++;
+        lineOffset = offset + position;
     }
 
     /**
-     * Wraps A* run. Sets start and target, replaces game data,
-     * and then restores it after the run. Returns the best snapshot of this run.
+     * Sets the error of the map if it has no error yet.
      *
-     * @param start  start point.
-     * @param target target point.
-     * @param data   game data for the run.
-     * @return best snapshot of this run.
+     * @param message error message.
      */
-    @Override
-    public Snapshot partialRun(Point start, Point target, GameData data) {
-        this.target = getNode(target).point;
+    private void fail(String message) {
+        if (error == null) error = message;
+    }
 
-        if (start == target) {
-            takeSnapshot(new ArrayList<>(), gameData.clone());
-            var snapshotCopy = currentSnapshot;
-            currentSnapshot = null;
+    /**
+     * Reads the byte if it is the expected one.
+     *
+     * @param expected expected byte.
+     * @return true if the byte is read, false otherwise.
+     * @throws IOException if it can't read the channel.
+     */
+    private boolean tryRead(char expected) throws IOException {
+        if (peek() != expected) return false;
 
-            return snapshotCopy;
+        read();
+        return true;
+    }
+
+    /**
+     * Returns the next byte without reading it.
+     *
+     * @return next byte, <code>EOF</code> at the end of the input.
+     * @throws IOException if it can't read the channel.
+     */
+    private int peek() throws IOException {
+        return position < limit || fill() ? bytes[position] & 0xFF : EOF;
+    }
+
+    /**
+     * Reads the next byte.
+     *
+     * @return next byte, <code>EOF</code> at the end of the input.
+     * @throws IOException if it can't read the channel.
+     */
+    private int read() throws IOException {
+        var c = peek();
+        if (c != EOF) position++;
+        return c;
+    }
+
+    /**
+     * Returns the number of the read bytes of the current line.
+     *
+     * @return column of the last read byte (from 1), 0 at the line start.
+     */
+    private int column() {
+        return (int) (offset + position - lineOffset);
+    }
+
+    /**
+     * Refills the read window from the channel or the buffer.
+     *
+     * @return true if the window has new bytes, false at the end of the input.
+     * @throws IOException if it can't read the channel.
+     */
+    private boolean fill() throws IOException {
+        offset += limit;
+        position = 0;
+        limit = 0;
+
+        if (channel != null) {
+            window.clear();
+            limit = Math.max(channel.read(window), 0);
+        } else if (source != null) {
+            limit = Math.min(source.remaining(), bytes.length);
+            source.get(bytes, 0, limit);
         }
 
-        if (isLosing(start)) return null;
+        return limit > 0;
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == 0x0B || c == '\f';
+    }
+
+    private static boolean isLineEnd(int c) {
+        return c == '\n' || c == '\r' || c == EOF;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+}
+
+/**
+ * Output helper utility class.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see Snapshot
+ */
+class OutputHelper {
+
+    /**
+     * Backtracking output file path.
+     *
+     * @see Backtracking
+     */
+    public static final Path BACKTRACKING_OUT = Path.of("outputBacktracking.txt");
+
+    /**
+     * AStar output file path.
+     *
+     * @see AStar
+     */
+    public static final Path A_STAR_OUT = Path.of("outputAStar.txt");
+
+    /**
+     * Writes the given nullable snapshot (null = lose) to the given output file.
+     * The path grid of the snapshot is rendered only here.
+     *
+     * @param outputPath output file path.
+     * @param snapshot   nullable snapshot.
+     * @param millis     algorithm execution time in milliseconds.
+     * @throws IOException default cases of IOException.
+     */
+    static void printResult(Path outputPath, Snapshot snapshot, long millis) throws IOException {
+        Files.writeString(outputPath, formatResult(snapshot, millis));
+    }
+
+    /**
+     * Formats the given nullable snapshot (null = lose) as in the output files.
+     *
+     * @param snapshot nullable snapshot.
+     * @param millis   algorithm execution time in milliseconds.
+     * @return formatted result.
+     */
+    static String formatResult(Snapshot snapshot, long millis) {
+        return snapshot == null ? "Lose\n" : String.format("Win\n%s\n%d ms\n", snapshot, millis);
+    }
+}
+
+/**
+ * Non-interactive batch mode. Reads many maps in the <code>input.txt</code> format (the positions line
+ * and the scenario line, repeated; blank lines are skipped) by the streaming parser, solves them
+ * by Backtracking and A* in a work-stealing pool, and streams the results in the input order.
+ * <p>
+ * Every worker thread keeps its own engines for each scenario and reuses them for all its maps.
+ * At most <code>window</code> maps are in flight, a result is written as soon as it and all
+ * the previous ones are ready, so the memory does not depend on the number of the maps.
+ * An invalid map is reported in its place and does not stop the batch.
+ *
+ * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+ * @see InputParser
+ * @see OutputHelper
+ * @see SearchingAlgorithm#run(GameData)
+ */
+class BatchSolver {
+
+    /**
+     * Map width.
+     */
+    private final int width;
+
+    /**
+     * Map height.
+     */
+    private final int height;
+
+    /**
+     * Maximum number of the maps in flight.
+     */
+    private final int window;
+
+    /**
+     * Engines of the worker: <code>[scenario - 1][0]</code> is Backtracking, <code>[scenario - 1][1]</code> is A*.
+     * Created on the first map of the scenario.
+     */
+    private final ThreadLocal<SearchingAlgorithm[][]> engines =
+            ThreadLocal.withInitial(() -> new SearchingAlgorithm[2][2]);
+
+    /**
+     * @param width  map width.
+     * @param height map height.
+     * @param window maximum number of the maps in flight.
+     */
+    public BatchSolver(int width, int height, int window) {
+        this.width = width;
+        this.height = height;
+        this.window = window;
+    }
+
+    /**
+     * Solves all the maps of the parser in the given pool and writes the results to the writer.
+     *
+     * @param parser maps parser (of the map size).
+     * @param writer results writer.
+     * @param pool   work-stealing pool.
+     * @return number of the maps.
+     * @throws IOException if it can't read the maps or write the results.
+     */
+    public long solve(InputParser parser, Writer writer, ForkJoinPool pool) throws IOException {
+        var pending = new ArrayDeque<ForkJoinTask<String>>();
+        var count = 0L;
 
-        var tmpGameData = gameData.clone();
-        gameData = data;
+        while (parser.next()) {
+            var number = ++count;
+            var error = parser.getError();
+            var points = error == null ? parser.points() : null;
+            var scenario = parser.getScenario();
 
-        steps.clear();
-        closed.clear();
-        cleanNodes();
+            pending.add(pool.submit(() -> solve(number, points, scenario, error)));
 
-        doRun(getNode(start));
+            while (pending.size() >= window || !pending.isEmpty() && pending.peek().isDone())
+                writer.write(pending.poll().join());
+        }
 
-        var current = getNode(target);
+        while (!pending.isEmpty())
+            writer.write(pending.poll().join());
 
-        for (; current != null && !current.point.equals(getNode(start).point); current = current.parent)
-            steps.push(current.point);
+        writer.flush();
+        return count;
+    }
 
-        gameData.setPath(start.getX(), start.getY());
+    /**
+     * Solves the map by the engines of the current worker.
+     *
+     * @param number   map number (from 1).
+     * @param points   spawn points (null if the map is invalid).
+     * @param scenario game scenario.
+     * @param error    parsing error (null if the map is valid).
+     * @return results of the map.
+     */
+    private String solve(long number, List<Point> points, int scenario, String error) {
+        try {
+            if (error != null)
+                throw new IOException(error);
 
-        var stepsList = new ArrayList<>(steps);
-        Collections.reverse(stepsList);
+            var data = new GameData(points, width, height);
 
-        // Fix for the blocked kraken cells: If we cannot connect our path with the start point => return null
-        if (
-                steps.isEmpty() || gameData.getMatrix().firstScenario(start.getX(), start.getY())
-                        .noneMatch(p -> p.equals(stepsList.get(0)))
-        ) {
-            currentSnapshot = null;
-            return null;
-        }
+            var workerEngines = engines.get()[scenario - 1];
+            if (workerEngines[0] == null) {
+                workerEngines[0] = new Backtracking(data, scenario);
+                workerEngines[1] = new AStar(data, scenario);
+            }
 
-        while (!steps.isEmpty()) {
-            var p = steps.pop();
-            gameData.setPath(p.getX(), p.getY());
+            return String.format("Map %d\n%s", number, results(workerEngines, data));
+        } catch (IOException | IllegalArgumentException e) {
+            return String.format("Map %d\nInvalid: %s\n", number, e.getMessage());
         }
+    }
 
-        takeSnapshot(stepsList, gameData.clone());
+    /**
+     * Runs Backtracking and A* over the map and formats their results.
+     *
+     * @param engines Backtracking and A* engines of the map scenario.
+     * @param data    game data of the map.
+     * @return formatted results.
+     */
+    static String results(SearchingAlgorithm[] engines, GameData data) {
+        // Engines never mutate their initial game data, so both share the map
+        return String.format("Backtracking\n%sA*\n%s", result(engines[0], data), result(engines[1], data));
+    }
 
-        gameData = tmpGameData;
-        var snapshotCopy = currentSnapshot;
-        currentSnapshot = null;
+    /**
+     * Runs the engine over the map and formats the result.
+     *
+     * @param engine engine of the worker.
+     * @param data   game data of the map.
+     * @return formatted result.
+     */
+    private static String result(SearchingAlgorithm engine, GameData data) {
+        var startMillis = System.currentTimeMillis();
+        var snapshot = engine.run(data);
+        var result = OutputHelper.formatResult(snapshot, System.currentTimeMillis() - startMillis);
 
-        return snapshotCopy;
+        // Only the budgeted runs (e.g. of the server) are interrupted
+        return engine.isInterrupted() ? "Interrupted\n" + result : result;
     }
 }
 
 /**
- * Input helper utility class.
+ * Long-running solver server. Listens on a local TCP port and answers the maps in the <code>input.txt</code>
+ * format (the positions line and the scenario line) with the results of Backtracking and A*
+ * as in the batch mode, each response is terminated by a blank line. A connection may send any number
+ * of the maps. The engines are created and warmed up once, so the requests pay neither the JVM startup
+ * nor the JIT compilation.
+ * <p>
+ * Every connection is served by its own thread, at most <code>maxConnections</code> at a time.
+ * The number of the concurrent solves is bounded by the pool of the engines: a request takes
+ * an engine set from the pool and returns it after the solve. The excess connections are answered
+ * with <code>Busy</code> and closed, and a request which waits for the engines longer than
+ * <code>WAIT_MILLIS</code> is answered with <code>Busy</code>. The engines are interrupted
+ * after <code>SOLVE_MILLIS</code>, then their best-effort results follow the <code>Interrupted</code> line.
  *
  * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
- * @see GameData
- * @see AStar
+ * @see BatchSolver
+ * @see InputHelper
  */
-class InputHelper {
+class SolverServer implements Closeable {
 
     /**
-     * Input file path.
+     * Maximum time to wait for the free engines.
      */
-    public static final Path INPUT = Path.of("input.txt");
+    private static final long WAIT_MILLIS = 1000;
 
     /**
-     * Input lines list.
+     * Time of the warm-up of the first engine set on random maps (at least one map of each scenario).
      */
-    private static List<String> inputData;
+    private static final long WARM_UP_MILLIS = 3000;
 
     /**
-     * List of spawn points used in GameData.
-     *
-     * @see GameData
+     * Time limit of a request. The results of the interrupted engines are only best-effort.
      */
-    private static List<Point> points;
+    private static final long SOLVE_MILLIS = 10_000;
 
     /**
-     * Game scenario. Used in AStar.
-     *
-     * @see AStar
+     * Input buffer capacity of a connection.
      */
-    private static int scenario;
+    private static final int CONNECTION_BUFFER_SIZE = 8192;
 
     /**
-     * 9x9 utility matrix. Used as a cache for the points.
+     * Maximum number of the random maps generated for the engines of a set.
      */
-    private static final Matrix MATRIX = new Matrix();
+    private static final int MAX_MAP_ATTEMPTS = 64;
 
     /**
-     * Parses the inputData.
-     *
-     * @throws IOException if input lines is not equal to 2.
+     * Map width.
      */
-    private static void parseInput() throws IOException {
-        if (inputData.size() != 2)
-            throw new IOException("Number of input lines is not equal to 2");
+    private final int width;
 
-        parsePoints();
-        parseScenario();
-    }
+    /**
+     * Map height.
+     */
+    private final int height;
 
     /**
-     * Tries to init and parse the reading streams. Accepts input from console and the file.
-     *
-     * @throws IOException if it can't open the streams, given invalid input data, or
-     *                     user selected invalid input way.
+     * Listening socket.
      */
-    public static void tryInitAndParse() throws IOException {
-        try (var reader = new BufferedReader(new InputStreamReader(System.in))) {
-            System.out.println("Choose the input source:\n[1] File\n[2] Console\nType number:");
+    private final ServerSocket serverSocket;
 
-            switch (Integer.parseInt(reader.readLine())) {
-                case 1 -> inputData = Files.readAllLines(INPUT);
-                case 2 -> {
-                    System.out.println("Enter the data:");
-                    inputData = Stream.of(reader.readLine(), reader.readLine()).toList();
-                }
-                default -> throw new IOException("Invalid number!");
-            }
+    /**
+     * Threads of the connections.
+     */
+    private final ThreadPoolExecutor connections;
 
-            parseInput();
-        } catch (NumberFormatException e) {
-            throw new IOException("Can't parse the given string to an integer");
-        }
+    /**
+     * Free engine sets: <code>[scenario - 1][0]</code> is Backtracking, <code>[scenario - 1][1]</code> is A*.
+     */
+    private final BlockingQueue<SearchingAlgorithm[][]> engines;
+
+    /**
+     * Binds the server to the loopback port and warms up the engines.
+     *
+     * @param port           TCP port (0 for any free port).
+     * @param width          map width.
+     * @param height         map height.
+     * @param solvers        maximum number of the concurrent solves.
+     * @param maxConnections maximum number of the concurrent connections.
+     * @throws IOException if the map size can't hold the game entities, or it can't bind the port.
+     */
+    public SolverServer(int port, int width, int height, int solvers, int maxConnections) throws IOException {
+        this.width = width;
+        this.height = height;
+
+        engines = new ArrayBlockingQueue<>(solvers);
+        for (int i = 0; i < solvers; i++)
+            engines.add(engineSet(i == 0 ? WARM_UP_MILLIS : 0));
+
+        connections = new ThreadPoolExecutor(0, maxConnections, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    var thread = new Thread(runnable, "solver-connection");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        serverSocket = new ServerSocket(port, maxConnections, InetAddress.getLoopbackAddress());
     }
 
     /**
-     * Parses and validates the points list.
+     * Creates the engines for both scenarios and warms them up on random maps.
+     * The compiled code is shared, so only the first set needs a long warm-up.
      *
-     * @throws IOException if any of the positions is invalid.
+     * @param warmUpMillis warm-up time, the runs are interrupted after it.
+     * @return engine set.
+     * @throws IOException if no random map of the size can be generated.
      */
-    private static void parsePoints() throws IOException {
-        points = Arrays.stream(inputData.get(0).split("\\s+"))
-                .filter(x -> x.matches("\\[[0-8],[0-8]]"))
-                .map(x -> {
-                    var split = x.replaceAll("[\\[\\]]+", "").split(",");
-                    return MATRIX.getPoint(Integer.parseInt(split[0]), Integer.parseInt(split[1]));
-                })
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .toList();
+    private SearchingAlgorithm[][] engineSet(long warmUpMillis) throws IOException {
+        GameData data = null;
+        for (int i = 0; i < MAX_MAP_ATTEMPTS && data == null; i++)
+            data = randomMap();
+
+        if (data == null)
+            throw new IOException(String.format("The %dx%d map can't hold the game entities", width, height));
+
+        SearchingAlgorithm[][] set = {
+                {new Backtracking(data, 1), new AStar(data, 1)},
+                {new Backtracking(data, 2), new AStar(data, 2)}
+        };
+
+        var deadline = Instant.now().plusMillis(warmUpMillis);
+        for (var engines : set)
+            for (var engine : engines)
+                engine.setBudget(deadline, Long.MAX_VALUE);
+
+        // The generation may fail on the tight sizes, then the first map is solved again
+        for (int i = 0; i < 2 || Instant.now().isBefore(deadline); i++) {
+            var map = randomMap();
+            BatchSolver.results(set[i % 2], map == null ? data : map);
+        }
 
-        if (points.size() != 6)
-            throw new IOException("Invalid positions");
+        return set;
     }
 
     /**
-     * Parses and validates the game scenario.
+     * Generates a random map of the server size.
      *
-     * @throws IOException if scenario is invalid.
+     * @return random map, null if the generation failed.
      */
-    private static void parseScenario() throws IOException {
-        scenario = Integer.parseInt(inputData.get(1));
-        if (scenario != 1 && scenario != 2)
-            throw new IOException("Invalid scenario");
+    private GameData randomMap() {
+        try {
+            return new GameData(width, height);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
-    static List<Point> getPoints() {
-        return points;
+    public int getPort() {
+        return serverSocket.getLocalPort();
     }
 
-    static int getScenario() {
-        return scenario;
-    }
-}
+    /**
+     * Accepts the connections until the server is closed.
+     *
+     * @throws IOException if the listening socket fails.
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                // The server is closed
+                return;
+            }
 
-/**
- * Output helper utility class.
- *
- * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
- * @see Snapshot
- */
-class OutputHelper {
+            try {
+                connections.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                try (socket; var output = socket.getOutputStream()) {
+                    output.write("Busy\n\n".getBytes(StandardCharsets.US_ASCII));
+                } catch (IOException ignored) {
+                    // The client has gone
+                }
+            }
+        }
+    }
 
     /**
-     * Backtracking output file path.
+     * Answers the maps of the connection until the client closes it.
      *
-     * @see Backtracking
+     * @param socket client socket.
      */
-    public static final Path BACKTRACKING_OUT = Path.of("outputBacktracking.txt");
+    private void serve(Socket socket) {
+        try (socket;
+             var channel = Channels.newChannel(socket.getInputStream());
+             var writer = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            socket.setTcpNoDelay(true);
+
+            var parser = new InputParser(channel, CONNECTION_BUFFER_SIZE, width, height);
+            while (parser.next()) {
+                writer.write(solve(parser));
+                writer.write('\n');
+                writer.flush();
+            }
+        } catch (IOException ignored) {
+            // The client has gone
+        }
+    }
 
     /**
-     * AStar output file path.
+     * Solves the last map of the parser by the free engines.
      *
-     * @see AStar
+     * @param parser parser of the connection.
+     * @return results of the map, <code>Invalid: message</code>, or <code>Busy</code>.
      */
-    public static final Path A_STAR_OUT = Path.of("outputAStar.txt");
+    private String solve(InputParser parser) {
+        SearchingAlgorithm[][] set = null;
+
+        try {
+            if (parser.getError() != null)
+                throw new IOException(parser.getError());
+
+            var parsedScenario = parser.getScenario();
+            var data = new GameData(parser.points(), width, height);
+
+            set = engines.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            if (set == null) return "Busy\n";
+
+            var deadline = Instant.now().plusMillis(SOLVE_MILLIS);
+            for (var engine : set[parsedScenario - 1])
+                engine.setBudget(deadline, Long.MAX_VALUE);
+
+            return BatchSolver.results(set[parsedScenario - 1], data);
+        } catch (IOException | IllegalArgumentException e) {
+            return String.format("Invalid: %s\n", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Busy\n";
+        } finally {
+            if (set != null) engines.add(set);
+        }
+    }
 
     /**
-     * Writes the given nullable snapshot (null = lose) to the given output file.
+     * Stops accepting the connections. The current connections are closed by their clients.
      *
-     * @param outputPath output file path.
-     * @param snapshot   nullable snapshot.
-     * @param millis     algorithm execution time in milliseconds.
-     * @throws IOException default cases of IOException.
+     * @throws IOException if it can't close the listening socket.
      */
-    static void printResult(Path outputPath, Snapshot snapshot, long millis) throws IOException {
-        if (snapshot == null) Files.writeString(outputPath, "Lose\n");
-        else Files.writeString(outputPath, String.format("Win\n%s\n%d ms\n", snapshot, millis));
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdown();
     }
 }
 
@@ -1698,6 +7099,8 @@ class TestHelper {
 
                 break;
             }
+
+            if (!checkEngines(data4.clone())) break;
         }
 
         printStats(backtrackingFirstWins, repeatNumber - backtrackingFirstWins, backtrackingFirstTimes);
@@ -1705,4 +7108,394 @@ class TestHelper {
         printStats(aStarFirstWins, repeatNumber - aStarFirstWins, aStarFirstTimes);
         printStats(aStarSecondWins, repeatNumber - aStarSecondWins, aStarSecondTimes);
     }
+
+    /**
+     * Checks the exact engines on the map in both scenarios: they must win and lose together
+     * with the breadth-first search and find the routes of the same length. The state space search
+     * may also win alone and find shorter routes.
+     *
+     * @param data game data.
+     * @return true if all the engines are correct, false otherwise (the details are printed).
+     */
+    private static boolean checkEngines(GameData data) {
+        for (int scenario = 1; scenario <= 2; scenario++) {
+            var reference = new BreadthFirstSearch(data, scenario).run();
+
+            // Jump Point Search supports only the first scenario
+            if (scenario == 1 && !check(new JumpPointSearch(data, scenario), reference, false)) return false;
+            if (!check(new BidirectionalAStar(data, scenario), reference, false)) return false;
+            if (!check(new IterativeDeepeningAStar(data, scenario), reference, false)) return false;
+            if (!check(new LandmarkSearch(data, scenario), reference, false)) return false;
+
+            // The state space search is globally optimal, so it may find a shorter route than the legs
+            if (!check(new StateSpaceSearch(data, scenario), reference, true)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks the run of the engine against the run of the reference: the engine must find a route
+     * if and only if the reference finds one, its route must be contiguous, and it must not be longer
+     * than the route of the reference (or shorter if <code>better</code> is false).
+     *
+     * @param engine    checked engine.
+     * @param reference nullable reference snapshot.
+     * @param better    true if the engine may find a shorter route than the reference.
+     * @return true if the run is correct, false otherwise (the details are printed).
+     */
+    private static boolean check(SearchingAlgorithm engine, Snapshot reference, boolean better) {
+        var result = engine.run();
+
+        var found = result != null && reference == null && better;
+        var correct = (result == null) == (reference == null) || found;
+        if (correct && result != null && reference != null)
+            correct = better ? result.length() <= reference.length() : result.length() == reference.length();
+
+        if (correct && (result == null || isContiguous(result))) return true;
+
+        var data = engine.gameData;
+        System.out.printf(
+                "FATAL! %s, scenario %d: %s instead of %s\n%s %s %s %s %s %s\n",
+                engine.getClass().getSimpleName(), engine.scenario,
+                result == null ? "Lose" : result.length() + " steps",
+                reference == null ? "Lose" : reference.length() + " steps",
+                data.getJackSparrow(), data.getDavyJones(), data.getKraken(),
+                data.getRock(), data.getChest(), data.getTortuga()
+        );
+
+        return false;
+    }
+
+    /**
+     * Indicates if every step of the path goes to a neighboring cell.
+     *
+     * @param snapshot snapshot.
+     * @return true if the path is contiguous, false otherwise.
+     */
+    private static boolean isContiguous(Snapshot snapshot) {
+        var matrix = snapshot.getGameData().getMatrix();
+        var previous = snapshot.getStart();
+
+        for (var cell : snapshot.getPath()) {
+            if (previous != -1) {
+                var from = matrix.point(previous);
+                var to = matrix.point(cell);
+
+                if (Math.max(Math.abs(from.getX() - to.getX()), Math.abs(from.getY() - to.getY())) != 1)
+                    return false;
+            }
+
+            previous = cell;
+        }
+
+        return true;
+    }
+
+    /**
+     * Plain breadth-first search over the first scenario moves. It is slow but exact, so it is
+     * the reference of the checks of the other engines.
+     *
+     * @author Dmitrii Alekhin (B21-03 d.alekhin@innopolis.university / @dmfrpro (Telegram))
+     * @see SearchingAlgorithm
+     */
+    private static class BreadthFirstSearch extends SearchingAlgorithm {
+
+        /**
+         * Parents of the reached cells (-1 for the start, -2 for the unreached cells).
+         */
+        private final int[] parents;
+
+        /**
+         * Queue of the reached cells.
+         */
+        private final int[] queue;
+
+        /**
+         * Moves buffer.
+         */
+        private final int[] moves = new int[8];
+
+        public BreadthFirstSearch(GameData gameData, int scenario) {
+            super(gameData, scenario);
+
+            var size = gameData.getMatrix().size();
+            parents = new int[size];
+            queue = new int[size];
+        }
+
+        @Override
+        public Snapshot partialRun(Point start, Point target, GameData data) {
+            if (start.equals(target)) return new Snapshot(-1, new int[0], data);
+
+            var tmpGameData = gameData;
+            gameData = data;
+
+            try {
+                if (isLosing(start) || isLosing(target)) return null;
+
+                var matrix = data.getMatrix();
+                var startIndex = matrix.index(start);
+                var targetIndex = matrix.index(target);
+
+                Arrays.fill(parents, -2);
+                parents[startIndex] = -1;
+                queue[0] = startIndex;
+
+                for (int head = 0, tail = 1; head < tail && parents[targetIndex] == -2; head++)
+                    for (int i = 0, size = safeMoves(MoveKind.FIRST_SCENARIO, queue[head], moves); i < size; i++)
+                        if (parents[moves[i]] == -2) {
+                            parents[moves[i]] = queue[head];
+                            queue[tail++] = moves[i];
+                        }
+
+                if (parents[targetIndex] == -2) return null;
+
+                var length = 0;
+                for (int cell = targetIndex; cell != startIndex; cell = parents[cell])
+                    length++;
+
+                var path = new int[length];
+                for (int cell = targetIndex, i = length - 1; i >= 0; cell = parents[cell])
+                    path[i--] = cell;
+
+                return new Snapshot(startIndex, path, data);
+            } finally {
+                gameData = tmpGameData;
+            }
+        }
+
+        @Override
+        protected SearchingAlgorithm copy() {
+            return new BreadthFirstSearch(gameData, scenario);
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far (-1 if unsupported by the JVM).
+     *
+     * @return allocated bytes.
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean)
+            return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+
+    /**
+     * Expands first scenario moves of every matrix cell with the streams API.
+     *
+     * @param matrix matrix.
+     * @return checksum of the moves.
+     */
+    private static long streamExpansion(Matrix matrix) {
+        var checksum = 0L;
+
+        for (int y = 0; y < matrix.getHeight(); y++)
+            for (int x = 0; x < matrix.getWidth(); x++)
+                checksum += matrix.firstScenario(x, y).mapToInt(p -> p.getX() + p.getY()).sum();
+
+        return checksum;
+    }
+
+    /**
+     * Expands first scenario moves of every matrix cell with the adjacency tables.
+     *
+     * @param matrix matrix.
+     * @return checksum of the moves.
+     */
+    private static long tableExpansion(Matrix matrix) {
+        var adjacency = matrix.getAdjacency();
+        var checksum = 0L;
+
+        for (int index = 0; index < matrix.size(); index++) {
+            var cls = adjacency.cellClass(index);
+            var end = adjacency.end(MoveKind.FIRST_SCENARIO, cls);
+
+            for (int k = adjacency.begin(MoveKind.FIRST_SCENARIO, cls); k < end; k++) {
+                var next = index + adjacency.offset(k);
+                checksum += next % matrix.getWidth() + next / matrix.getWidth();
+            }
+        }
+
+        return checksum;
+    }
+
+    /**
+     * Prints the time and the allocated memory per cell expansion.
+     *
+     * @param name       benchmark name.
+     * @param expansions number of the cell expansions.
+     * @param nanos      total time in nanoseconds.
+     * @param bytes      total allocated bytes.
+     */
+    private static void printBenchmark(String name, double expansions, long nanos, long bytes) {
+        System.out.printf("%s: %f ns/expansion, %f bytes/expansion\n", name, nanos / expansions, bytes / expansions);
+    }
+
+    /**
+     * Compares the first scenario moves expansion through the streams API of <code>Matrix</code>
+     * with the expansion through the precomputed adjacency tables. Both variants are warmed up
+     * before the measurement.
+     *
+     * @param iterations number of the whole matrix expansions.
+     * @see Adjacency
+     */
+    public static void benchmark(int iterations) {
+        var matrix = new Matrix();
+        var expansions = (double) iterations * matrix.size();
+        var checksum = 0L;
+
+        for (int i = 0; i < iterations; i++)
+            checksum += streamExpansion(matrix) + tableExpansion(matrix);
+
+        var startBytes = allocatedBytes();
+        var startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            checksum += streamExpansion(matrix);
+        printBenchmark("streams", expansions, System.nanoTime() - startNanos, allocatedBytes() - startBytes);
+
+        startBytes = allocatedBytes();
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            checksum -= tableExpansion(matrix);
+        printBenchmark("tables", expansions, System.nanoTime() - startNanos, allocatedBytes() - startBytes);
+
+        System.out.printf("checksum: %d\n", checksum);
+
+        benchmarkQueues(512);
+        benchmarkJumps(1024);
+        benchmarkBidirectional(1024);
+        benchmarkReplanning(512);
+    }
+
+    /**
+     * Compares A* with the binary heap and with the bucket queue on a random map of the given size.
+     * Both engines are warmed up before the measurement.
+     *
+     * @param size map width and height.
+     * @see AStar
+     * @see Dial
+     */
+    private static void benchmarkQueues(int size) {
+        var data = new GameData(size, size);
+
+        for (int i = 0; i < 3; i++) {
+            new AStar(data, 2).run();
+            new Dial(data, 2).run();
+        }
+
+        var startNanos = System.nanoTime();
+        var aStarResult = new AStar(data, 2).run();
+        System.out.printf("A* (heap): %d ms\n", (System.nanoTime() - startNanos) / 1_000_000);
+
+        startNanos = System.nanoTime();
+        var dialResult = new Dial(data, 2).run();
+        System.out.printf("A* (buckets): %d ms\n", (System.nanoTime() - startNanos) / 1_000_000);
+
+        System.out.printf("identical results: %b\n", String.valueOf(aStarResult).equals(String.valueOf(dialResult)));
+    }
+
+    /**
+     * Compares A* with bidirectional A* on a random map of the given size (second scenario).
+     * Both engines are warmed up before the measurement, the expanded nodes are counted over a single run.
+     *
+     * @param size map width and height.
+     * @see Dial
+     * @see BidirectionalAStar
+     */
+    private static void benchmarkBidirectional(int size) {
+        var data = new GameData(size, size);
+
+        for (int i = 0; i < 3; i++) {
+            new Dial(data, 2).run();
+            new BidirectionalAStar(data, 2).run();
+        }
+
+        var aStar = new Dial(data, 2);
+        var startNanos = System.nanoTime();
+        var aStarResult = aStar.run();
+        System.out.printf("A* (buckets): %d ms, %d expansions\n",
+                (System.nanoTime() - startNanos) / 1_000_000, aStar.getExpansions());
+
+        var bidirectional = new BidirectionalAStar(data, 2);
+        startNanos = System.nanoTime();
+        var bidirectionalResult = bidirectional.run();
+        System.out.printf("Bidirectional A*: %d ms, %d expansions\n",
+                (System.nanoTime() - startNanos) / 1_000_000, bidirectional.getExpansions());
+
+        System.out.printf("same lengths: %b\n", aStarResult == null
+                ? bidirectionalResult == null
+                : bidirectionalResult != null && aStarResult.length() == bidirectionalResult.length());
+    }
+
+    /**
+     * Compares a fresh Lifelong Planning A* run with the repair of the kept search tree after Kraken removal
+     * on a random map of the given size (first scenario). Both engines are warmed up before the measurement.
+     *
+     * @param size map width and height.
+     * @see LifelongPlanningAStar
+     */
+    private static void benchmarkReplanning(int size) {
+        var data = new GameData(size, size);
+        var killedData = data.clone();
+        killedData.tryRemoveKraken();
+
+        var start = data.getJackSparrow();
+        var target = data.getChest();
+
+        for (int i = 0; i < 3; i++) {
+            var warmUp = new LifelongPlanningAStar(data, 1);
+            warmUp.partialRun(start, target, data);
+            warmUp.partialRun(start, target, killedData);
+        }
+
+        var incremental = new LifelongPlanningAStar(data, 1);
+        incremental.partialRun(start, target, data);
+        var firstExpansions = incremental.getExpansions();
+
+        var startNanos = System.nanoTime();
+        var incrementalResult = incremental.partialRun(start, target, killedData);
+        System.out.printf("LPA* (replanning): %d us, %d expansions\n",
+                (System.nanoTime() - startNanos) / 1_000, incremental.getExpansions() - firstExpansions);
+
+        var fresh = new LifelongPlanningAStar(data, 1);
+        startNanos = System.nanoTime();
+        var freshResult = fresh.partialRun(start, target, killedData);
+        System.out.printf("LPA* (from scratch): %d us, %d expansions\n",
+                (System.nanoTime() - startNanos) / 1_000, fresh.getExpansions());
+
+        System.out.printf("same lengths: %b\n", freshResult == null
+                ? incrementalResult == null
+                : incrementalResult != null && freshResult.length() == incrementalResult.length());
+    }
+
+    /**
+     * Compares A* with Jump Point Search on a random map of the given size (first scenario).
+     * Both engines are warmed up before the measurement.
+     *
+     * @param size map width and height.
+     * @see Dial
+     * @see JumpPointSearch
+     */
+    private static void benchmarkJumps(int size) {
+        var data = new GameData(size, size);
+
+        for (int i = 0; i < 3; i++) {
+            new Dial(data, 1).run();
+            new JumpPointSearch(data, 1).run();
+        }
+
+        var startNanos = System.nanoTime();
+        var aStarResult = new Dial(data, 1).run();
+        System.out.printf("A* (buckets): %d ms\n", (System.nanoTime() - startNanos) / 1_000_000);
+
+        startNanos = System.nanoTime();
+        var jpsResult = new JumpPointSearch(data, 1).run();
+        System.out.printf("Jump Point Search: %d ms\n", (System.nanoTime() - startNanos) / 1_000_000);
+
+        System.out.printf("same lengths: %b\n", aStarResult == null
+                ? jpsResult == null
+                : jpsResult != null && aStarResult.length() == jpsResult.length());
+    }
 }
\ No newline at end of file